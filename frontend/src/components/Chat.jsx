@@ -9,17 +9,24 @@ import '../styles/chat.css';
 import { FaPhone, FaPaperPlane, FaUser, FaSearch, FaTrash, FaMoon, FaComment } from 'react-icons/fa';
 
 const API_BASE_URL = import.meta.env.VITE_API_URL;
+// Stored avatars come back as server-relative URLs
+const avatarSrc = (pic, fallback) => !pic ? fallback : pic.startsWith('/') ? `${API_BASE_URL}${pic}` : pic;
 
 function Chat() {
   const [users, setUsers] = useState([]);
   const [selectedContact, setSelectedContact] = useState(null);
   const [messages, setMessages] = useState([]);
+  const [olderCursor, setOlderCursor] = useState(null);
   const [newMessage, setNewMessage] = useState('');
   const [searchQuery, setSearchQuery] = useState('');
   const [error, setError] = useState('');
   const [userId, setUserId] = useState(null);
   const [isDarkTheme, setIsDarkTheme] = useState(false);
   const [unreadCounts, setUnreadCounts] = useState({});
+  const [onlineUsers, setOnlineUsers] = useState({});
+  const [typingUsers, setTypingUsers] = useState({});
+  const typingTimers = useRef({});
+  const lastTypingSent = useRef(0);
   const [showProfilePopup, setShowProfilePopup] = useState(false);
   const [popupContact, setPopupContact] = useState(null);
   const [showDeletePopup, setShowDeletePopup] = useState(false);
@@ -127,6 +134,7 @@ function Chat() {
         headers: { Authorization: `Bearer ${localStorage.getItem('token')}` }
       });
       setMessages(response.data);
+      setOlderCursor(response.headers['x-next-cursor'] || null);
       setError('');
       // Mark messages as read
       await axios.post(
@@ -152,6 +160,20 @@ function Chat() {
     }
   }
 
+  async function fetchOlderMessages() {
+    if (!selectedContact || !olderCursor) return;
+    try {
+      const response = await axios.get(`${API_BASE_URL}/api/messages/${selectedContact.id}`, {
+        params: { before: olderCursor },
+        headers: { Authorization: `Bearer ${localStorage.getItem('token')}` }
+      });
+      setMessages(prev => [...response.data, ...prev]);
+      setOlderCursor(response.headers['x-next-cursor'] || null);
+    } catch (error) {
+      setError(error.response?.data || 'Failed to fetch older messages');
+    }
+  }
+
   const connectWebSocket = () => {
     if (!userId) return;
 
@@ -161,111 +183,136 @@ function Chat() {
         Authorization: `Bearer ${localStorage.getItem('token')}`
       },
       onConnect: () => {
-        // Subscribe to contact updates
-        stompClient.current.subscribe(
-          `/topic/contacts/${userId}`,
-          (message) => {
-            const newContact = JSON.parse(message.body);
-            setUsers(prev => {
-              const existingUserIndex = prev.findIndex(user => user.id === newContact.id);
-              if (existingUserIndex === -1) {
-                return [newContact, ...prev];
-              }
-              const updatedUsers = [...prev];
-              updatedUsers.splice(existingUserIndex, 1);
-              return [newContact, ...updatedUsers].sort((a, b) => {
-                const timeA = a.lastMessageTime ? new Date(a.lastMessageTime) : new Date(0);
-                const timeB = b.lastMessageTime ? new Date(b.lastMessageTime) : new Date(0);
-                return timeB - timeA;
-              });
-            });
-            if (newContact.unreadCount > 0) {
-              setUnreadCounts(prev => ({
-                ...prev,
-                [newContact.id]: newContact.unreadCount
-              }));
-            }
-          }
-        );
-
-        // Subscribe to contact removals
-        stompClient.current.subscribe(
-          `/topic/contacts/remove/${userId}`,
-          (message) => {
-            const removedContact = JSON.parse(message.body);
-            console.log('Received contact removal on /topic/contacts/remove/', removedContact);
-            setUsers(prev => prev.filter(user => user.id !== removedContact.id));
-            if (selectedContact && selectedContact.id === removedContact.id) {
-              setSelectedContact(null);
-              setMessages([]);
-            }
+        const sortByLastMessage = (list) => list.sort((a, b) => {
+          const timeA = a.lastMessageTime ? new Date(a.lastMessageTime) : new Date(0);
+          const timeB = b.lastMessageTime ? new Date(b.lastMessageTime) : new Date(0);
+          return timeB - timeA;
+        });
+
+        const upsertContact = (contact) => {
+          setUsers(prev => {
+            // Contact events only carry the fields that changed; keep the rest
+            const existing = prev.find(u => u.id === contact.id) || {};
+            const newContact = {
+              id: contact.id,
+              username: contact.username ?? existing.username,
+              profilePic: contact.profilePic ?? existing.profilePic,
+              profileThumbnail: contact.profileThumbnail ?? existing.profileThumbnail,
+              lastMessageContent: contact.lastMessageContent ?? existing.lastMessageContent,
+              lastMessageTime: contact.lastMessageTime ?? existing.lastMessageTime,
+              unreadCount: contact.unreadCount ?? existing.unreadCount ?? 0
+            };
+            return sortByLastMessage([newContact, ...prev.filter(u => u.id !== contact.id)]);
+          });
+          if (selectedContact?.id !== contact.id && contact.unreadCount > 0) {
+            setUnreadCounts(prev => ({ ...prev, [contact.id]: contact.unreadCount }));
           }
-        );
-
-        // Subscribe to contact list updates
-        stompClient.current.subscribe(
-          `/topic/messages/${userId}`,
-          (message) => {
-            const updatedContact = JSON.parse(message.body);
-            if (!updatedContact.id) {
-              return;
-            }
-            setUsers(prev => {
-              const existingIndex = prev.findIndex(u => u.id === updatedContact.id);
-              const newContact = {
-                id: updatedContact.id,
-                username: updatedContact.username,
-                profilePic: updatedContact.profilePic,
-                lastMessageContent: updatedContact.lastMessageContent,
-                lastMessageTime: updatedContact.lastMessageTime,
-                unreadCount: updatedContact.unreadCount || 0
-              };
-              let updatedUsers;
-              if (existingIndex === -1) {
-                updatedUsers = [newContact, ...prev];
-              } else {
-                updatedUsers = [...prev];
-                updatedUsers.splice(existingIndex, 1);
-                updatedUsers = [newContact, ...updatedUsers];
-              }
-              return updatedUsers.sort((a, b) => {
-                const timeA = a.lastMessageTime ? new Date(a.lastMessageTime) : new Date(0);
-                const timeB = b.lastMessageTime ? new Date(b.lastMessageTime) : new Date(0);
-                return timeB - timeA;
-              });
-            });
-            if (selectedContact?.id !== updatedContact.id && updatedContact.unreadCount > 0) {
-              setUnreadCounts(prev => {
-                const newCounts = { ...prev, [updatedContact.id]: updatedContact.unreadCount };
-                console.log(`Updated unread count for user ${updatedContact.id}: ${updatedContact.unreadCount}`);
-                return newCounts;
+        };
+
+        const handleMessage = (message) => {
+          const fromMe = message.senderId === userId;
+          const otherId = fromMe ? message.recipientId : message.senderId;
+          if (selectedContact?.id === otherId) {
+            setMessages((prev) => prev.find((msg) => msg.id === message.id) ? prev : [...prev, message]);
+            if (!fromMe) {
+              stompClient.current.publish({
+                destination: '/app/chat.read',
+                body: JSON.stringify({ contactId: otherId })
               });
             }
-            // If the updated contact is the selected contact, fetch messages to ensure the chat box updates
-            if (selectedContact?.id === updatedContact.id) {
-              fetchMessages();
-            }
+          } else if (!fromMe) {
+            setUnreadCounts(prev => ({ ...prev, [otherId]: (prev[otherId] || 0) + 1 }));
           }
-        );
-
-        // Subscribe to messages for the selected contact
-        if (selectedContact) {
-          stompClient.current.subscribe(
-            `/topic/messages/${userId}/${selectedContact.id}`,
-            (message) => {
-              const newMessage = JSON.parse(message.body);
-              console.log('Received message on /topic/messages/', newMessage);
-              if (!newMessage.hiddenForUserIds || !newMessage.hiddenForUserIds.includes(userId)) {
-                setMessages((prev) => {
-                  if (!prev.find((msg) => msg.id === newMessage.id)) {
-                    return [...prev, newMessage];
-                  }
-                  return prev;
+          upsertContact({
+            id: otherId,
+            lastMessageContent: message.content,
+            lastMessageTime: message.sentAt
+          });
+        };
+
+        const applyPresence = (updates) => {
+          setOnlineUsers(prev => {
+            const next = { ...prev };
+            updates.forEach(update => {
+              next[update.userId] = update.online;
+            });
+            return next;
+          });
+        };
+
+        // All server pushes arrive as typed events on one per-user queue
+        stompClient.current.subscribe('/user/queue/events', (frame) => {
+          const event = JSON.parse(frame.body);
+          switch (event.type) {
+            case 'message':
+              handleMessage(event.payload);
+              break;
+            case 'message-failed':
+              // Shown on send but never stored
+              setMessages((prev) => prev.filter((msg) => msg.id !== event.payload.id));
+              if (event.payload.senderId === userId) {
+                toast.error('Failed to send message: could not be saved', {
+                  position: 'top-right',
+                  autoClose: 3000,
+                  hideProgressBar: false,
+                  closeOnClick: true,
+                  pauseOnHover: true,
+                  draggable: true,
+                });
+              }
+              break;
+            case 'expired':
+              if (selectedContact?.id === event.payload.contactId) {
+                // ISO timestamps compare correctly as strings
+                setMessages((prev) => prev.filter((msg) => msg.sentAt > event.payload.expiredUpTo));
+              }
+              break;
+            case 'contact':
+              upsertContact(event.payload);
+              break;
+            case 'ack':
+              if (event.payload.error) {
+                toast.error('Failed to send message: ' + event.payload.error, {
+                  position: 'top-right',
+                  autoClose: 3000,
+                  hideProgressBar: false,
+                  closeOnClick: true,
+                  pauseOnHover: true,
+                  draggable: true,
                 });
               }
+              break;
+            case 'typing': {
+              const { contactId, typing } = event.payload;
+              clearTimeout(typingTimers.current[contactId]);
+              if (typing) {
+                // The server refreshes the indicator while typing continues; drop it if that stops
+                typingTimers.current[contactId] = setTimeout(() => {
+                  setTypingUsers(prev => ({ ...prev, [contactId]: false }));
+                }, 5000);
+              }
+              setTypingUsers(prev => ({ ...prev, [contactId]: typing }));
+              break;
             }
-          );
-        }
+            case 'presence':
+              applyPresence(event.payload);
+              break;
+            case 'contact-removed':
+              setUsers(prev => prev.filter(user => user.id !== event.payload.id));
+              if (selectedContact && selectedContact.id === event.payload.id) {
+                setSelectedContact(null);
+                setMessages([]);
+              }
+              break;
+            default:
+              break;
+          }
+        });
+
+        // Seed presence once subscribed; later changes arrive as deltas
+        axios.get(`${API_BASE_URL}/api/contacts/presence`, {
+          headers: { Authorization: `Bearer ${localStorage.getItem('token')}` }
+        }).then(response => applyPresence(response.data)).catch(() => {});
       },
       onStompError: (error) => {
         setError('WebSocket connection failed: ' + error);
@@ -340,9 +387,31 @@ function Chat() {
     setContactToDelete(null);
   };
 
+  // Throttled here as well; the server coalesces whatever gets through
+  const publishTyping = (typing) => {
+    if (!stompClient.current?.connected || !selectedContact) return;
+    const now = Date.now();
+    if (typing && now - lastTypingSent.current < 1000) return;
+    lastTypingSent.current = typing ? now : 0;
+    stompClient.current.publish({
+      destination: '/app/chat.typing',
+      body: JSON.stringify({ contactId: selectedContact.id, typing })
+    });
+  };
+
   const handleSendMessage = async (e) => {
     e.preventDefault();
     if (!newMessage.trim() || !selectedContact) return;
+    publishTyping(false);
+    // Over the open WebSocket the message comes back as a 'message' event; HTTP is only the fallback
+    if (stompClient.current?.connected) {
+      stompClient.current.publish({
+        destination: '/app/chat.send',
+        body: JSON.stringify({ recipientId: selectedContact.id, content: newMessage, clientId: `${Date.now()}` })
+      });
+      setNewMessage('');
+      return;
+    }
     try {
       await axios.post(
         `${API_BASE_URL}/api/messages`,
@@ -473,9 +542,9 @@ function Chat() {
                 }}
               >
                 <img 
-                  src={user.profilePic || 'https://via.placeholder.com/40'} 
+                  src={avatarSrc(user.profileThumbnail || user.profilePic, 'https://via.placeholder.com/40')} 
                   alt="Profile" 
-                  className="contact-pic" 
+                  className={`contact-pic ${onlineUsers[user.id] ? 'online' : ''}`} 
                   onClick={(e) => {
                     e.stopPropagation();
                     handleProfilePicClick(user);
@@ -521,13 +590,14 @@ function Chat() {
                   </button>
                 )}
                 <img 
-                  src={selectedContact.profilePic || 'https://via.placeholder.com/40'} 
+                  src={avatarSrc(selectedContact.profileThumbnail || selectedContact.profilePic, 'https://via.placeholder.com/40')} 
                   alt="Profile" 
                   className="contact-pic" 
                   onClick={() => handleProfilePicClick(selectedContact)}
                   style={{ cursor: 'pointer' }}
                 />
                 <h2>{selectedContact.username}</h2>
+                {typingUsers[selectedContact.id] && <span className="typing-indicator">typing…</span>}
               </div>
               <div className="chat-header-buttons">
                 <button onClick={handleCall} className={`btn btn-call ${isDarkTheme ? 'dark-theme' : ''}`} title="Call">
@@ -549,10 +619,15 @@ function Chat() {
             </div>
 
             <div className={`messages ${isDarkTheme ? 'dark-theme' : ''}`}>
+              {olderCursor && (
+                <button onClick={fetchOlderMessages} className={`btn btn-load-older ${isDarkTheme ? 'dark-theme' : ''}`}>
+                  Load older messages
+                </button>
+              )}
               {messages.map((msg) => (
                 <div
                   key={msg.id}
-                  className={`message ${msg.sender.id === selectedContact.id ? 'received' : 'sent'} ${isDarkTheme ? 'dark-theme' : ''}`}
+                  className={`message ${msg.senderId === selectedContact.id ? 'received' : 'sent'} ${isDarkTheme ? 'dark-theme' : ''}`}
                 >
                   <span className="message-content">{msg.content}</span>
                   <span className={`message-timestamp ${isDarkTheme ? 'dark-theme' : ''}`}>
@@ -567,7 +642,10 @@ function Chat() {
               <input
                 type="text"
                 value={newMessage}
-                onChange={(e) => setNewMessage(e.target.value)}
+                onChange={(e) => {
+                  setNewMessage(e.target.value);
+                  publishTyping(e.target.value.length > 0);
+                }}
                 onKeyDown={handleKeyDown}
                 placeholder="Type a message..."
               />
@@ -604,7 +682,7 @@ function Chat() {
               ×
             </button>
             <img 
-              src={popupContact.profilePic || 'https://via.placeholder.com/150'} 
+              src={avatarSrc(popupContact.profilePic, 'https://via.placeholder.com/150')} 
               alt="Profile" 
               className="popup-profile-pic"
               style={{ width: '150px', height: '150px', borderRadius: '50%', marginBottom: '10px' }}
@@ -5,6 +5,8 @@ import { ToastContainer, toast } from 'react-toastify';
 import 'react-toastify/dist/ReactToastify.css';
 import '../styles/login.css';
 const API_BASE_URL = import.meta.env.VITE_API_URL;
+// Stored avatars come back as server-relative URLs
+const avatarSrc = (pic, fallback) => !pic ? fallback : pic.startsWith('/') ? `${API_BASE_URL}${pic}` : pic;
 
 function Profile() {
   const [userData, setUserData] = useState({ username: '', email: '', profilePic: '' });
@@ -17,7 +19,7 @@ function Profile() {
         headers: { Authorization: `Bearer ${localStorage.getItem('token')}` }
       });
       setUserData({ username: response.data.username, email: response.data.email, profilePic: response.data.profilePic });
-      setPreviewPic(response.data.profilePic || 'https://via.placeholder.com/150');
+      setPreviewPic(avatarSrc(response.data.profilePic, 'https://via.placeholder.com/150'));
     } catch (error) {
       
       toast.error('Failed to fetch profile: ' + (error.response?.data || error.message), {
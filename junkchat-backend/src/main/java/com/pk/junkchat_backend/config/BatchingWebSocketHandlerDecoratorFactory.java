@@ -0,0 +1,142 @@
+package com.pk.junkchat_backend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps every WebSocket session in a BatchingWebSocketSession and owns what they share: the flush timer, the
+ * pool that does the writes, the limits and the metrics (websocket.outbound.*). The timer thread only hands due
+ * flushes to the pool.
+ *
+ * The pool uses platform threads in both threading modes. Tomcat's blocking write waits inside a synchronized
+ * block, which pins a virtual thread's carrier for as long as the client stalls, and enough stalled clients
+ * would then freeze every virtual thread in the JVM. A stalled client instead holds one pool thread until its
+ * session passes send-time-limit and is closed; flush-threads must cover the number of clients expected to
+ * stall at once, or other sessions' flushes queue behind them.
+ */
+@Component
+public class BatchingWebSocketHandlerDecoratorFactory implements WebSocketHandlerDecoratorFactory {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${junkchat.websocket.batch-window-ms:10}")
+    private long batchWindowMillis;
+
+    @Value("${junkchat.websocket.max-buffered-bytes:524288}")
+    private int maxBufferedBytes;
+
+    @Value("${junkchat.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMillis;
+
+    @Value("${junkchat.websocket.flush-threads:32}")
+    private int flushThreads;
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService flushExecutor;
+    private final AtomicLong queuedFrames = new AtomicLong();
+    private final Map<String, BatchingWebSocketSession> sessions = new ConcurrentHashMap<>();
+    private Counter flushedFrames;
+    private Counter droppedFrames;
+    private Counter slowConsumersClosed;
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-flush-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadCount = new AtomicInteger();
+        // Queue stays small: a session has at most one flush scheduled at a time
+        flushExecutor = Executors.newFixedThreadPool(Math.max(1, flushThreads), runnable -> {
+            Thread thread = new Thread(runnable, "ws-flush-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("websocket.outbound.queued.frames", queuedFrames, AtomicLong::get)
+                .description("Frames waiting in per-session outbound batches")
+                .register(meterRegistry);
+        Gauge.builder("websocket.outbound.sessions", sessions, Map::size).register(meterRegistry);
+        flushedFrames = Counter.builder("websocket.outbound.flushed.frames").register(meterRegistry);
+        droppedFrames = Counter.builder("websocket.outbound.dropped.frames")
+                .description("Ephemeral frames dropped for slow consumers")
+                .register(meterRegistry);
+        slowConsumersClosed = Counter.builder("websocket.outbound.slow-consumers.closed").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        flushExecutor.shutdownNow();
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                BatchingWebSocketSession batching = new BatchingWebSocketSession(session, BatchingWebSocketHandlerDecoratorFactory.this);
+                sessions.put(session.getId(), batching);
+                super.afterConnectionEstablished(batching);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                BatchingWebSocketSession batching = sessions.remove(session.getId());
+                if (batching != null) {
+                    batching.discardPending();
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    public int getSendTimeLimitMillis() {
+        return sendTimeLimitMillis;
+    }
+
+    public int getMaxBufferedBytes() {
+        return maxBufferedBytes;
+    }
+
+    void scheduleFlush(Runnable flush) {
+        scheduler.schedule(() -> flushExecutor.execute(flush), batchWindowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void recordQueued(int delta) {
+        queuedFrames.addAndGet(delta);
+    }
+
+    void recordFlushed(int frames) {
+        flushedFrames.increment(frames);
+    }
+
+    void recordDropped(int frames) {
+        droppedFrames.increment(frames);
+    }
+
+    void recordSlowConsumerClosed() {
+        slowConsumersClosed.increment();
+    }
+}
@@ -0,0 +1,210 @@
+package com.pk.junkchat_backend.config;
+
+import com.pk.junkchat_backend.model.DeliveryEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces outbound STOMP frames of one session. Frames queued within the batch window are written as a single
+ * WebSocket message (STOMP frames are NUL-terminated, so clients split them again). sendMessage never blocks on
+ * the network; only the flush does, on the factory's flush pool.
+ *
+ * Slow consumers: once the queued bytes would pass the cap, queued and new ephemeral frames are dropped first;
+ * if that is not enough, or a single write has been stuck longer than the send time limit, the session is closed.
+ */
+class BatchingWebSocketSession extends WebSocketSessionDecorator {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchingWebSocketSession.class);
+
+    private final BatchingWebSocketHandlerDecoratorFactory factory;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final List<Frame> pending = new ArrayList<>();
+    private int pendingBytes;
+    private boolean flushScheduled;
+    private volatile long writeStartedAt;
+    private volatile boolean closing;
+
+    BatchingWebSocketSession(WebSocketSession delegate, BatchingWebSocketHandlerDecoratorFactory factory) {
+        super(delegate);
+        this.factory = factory;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (closing) {
+            return;
+        }
+        if (!(message instanceof TextMessage textMessage)) {
+            // STOMP here is text-only; anything else is written straight through
+            writeLock.lock();
+            try {
+                super.sendMessage(message);
+            } finally {
+                writeLock.unlock();
+            }
+            return;
+        }
+        Frame frame = new Frame(textMessage.getPayload());
+        if (isStuck()) {
+            closeSlowConsumer("write stuck for more than " + factory.getSendTimeLimitMillis() + " ms");
+            return;
+        }
+        lock.lock();
+        try {
+            if (!pending.isEmpty() && pendingBytes + frame.size() > factory.getMaxBufferedBytes()) {
+                dropEphemeral();
+                if (frame.ephemeral()) {
+                    factory.recordDropped(1);
+                    return;
+                }
+                if (pendingBytes + frame.size() > factory.getMaxBufferedBytes()) {
+                    closing = true;
+                }
+            }
+            if (!closing) {
+                pending.add(frame);
+                pendingBytes += frame.size();
+                factory.recordQueued(1);
+                if (!flushScheduled) {
+                    flushScheduled = true;
+                    factory.scheduleFlush(this::flushQuietly);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (closing) {
+            closeSlowConsumer("more than " + factory.getMaxBufferedBytes() + " bytes queued");
+        }
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        discardPending();
+        super.close(status);
+    }
+
+    void discardPending() {
+        closing = true;
+        lock.lock();
+        try {
+            factory.recordQueued(-pending.size());
+            pending.clear();
+            pendingBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception ex) {
+            // The batch is gone and later frames would be out of order; end the session so the client reconnects
+            logger.warn("Closing WebSocket session {} after a failed write: {}", getId(), ex.getMessage());
+            closing = true;
+            try {
+                close(CloseStatus.SERVER_ERROR);
+            } catch (IOException closeEx) {
+                logger.debug("Error closing session {}: {}", getId(), closeEx.getMessage());
+            }
+        }
+    }
+
+    // Only one flush runs per session: flushScheduled stays set until the loop finds nothing left to send
+    private void flush() throws IOException {
+        while (true) {
+            StringBuilder batch;
+            int frames;
+            lock.lock();
+            try {
+                if (pending.isEmpty() || closing) {
+                    flushScheduled = false;
+                    return;
+                }
+                batch = new StringBuilder(pendingBytes);
+                for (Frame frame : pending) {
+                    batch.append(frame.payload());
+                }
+                frames = pending.size();
+                pending.clear();
+                pendingBytes = 0;
+            } finally {
+                lock.unlock();
+            }
+            factory.recordQueued(-frames);
+            writeLock.lock();
+            writeStartedAt = System.currentTimeMillis();
+            try {
+                super.sendMessage(new TextMessage(batch));
+            } finally {
+                writeStartedAt = 0;
+                writeLock.unlock();
+            }
+            factory.recordFlushed(frames);
+        }
+    }
+
+    private void dropEphemeral() {
+        int dropped = 0;
+        Iterator<Frame> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            Frame frame = iterator.next();
+            if (frame.ephemeral()) {
+                iterator.remove();
+                pendingBytes -= frame.size();
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            factory.recordQueued(-dropped);
+            factory.recordDropped(dropped);
+        }
+    }
+
+    private boolean isStuck() {
+        long started = writeStartedAt;
+        return started != 0 && System.currentTimeMillis() - started > factory.getSendTimeLimitMillis();
+    }
+
+    private void closeSlowConsumer(String reason) {
+        closing = true;
+        logger.warn("Closing slow WebSocket session {}: {}", getId(), reason);
+        factory.recordSlowConsumerClosed();
+        try {
+            close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException ex) {
+            logger.debug("Error closing session {}: {}", getId(), ex.getMessage());
+        }
+    }
+
+    private record Frame(String payload, boolean ephemeral) {
+        Frame(String payload) {
+            this(payload, isEphemeral(payload));
+        }
+
+        // Characters, not bytes: close enough for a buffer cap and free to compute
+        int size() {
+            return payload.length();
+        }
+
+        // Only the STOMP header block is inspected, never the body
+        private static boolean isEphemeral(String payload) {
+            int headersEnd = payload.indexOf("\n\n");
+            String headers = headersEnd < 0 ? payload : payload.substring(0, headersEnd);
+            return headers.contains("\n" + DeliveryEvent.EPHEMERAL_HEADER + ":true");
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.pk.junkchat_backend.config;
+
+import com.pk.junkchat_backend.service.ClusterTransport;
+import com.pk.junkchat_backend.service.InMemorySessionDirectory;
+import com.pk.junkchat_backend.service.InProcessClusterTransport;
+import com.pk.junkchat_backend.service.JdbcSessionDirectory;
+import com.pk.junkchat_backend.service.PostgresClusterTransport;
+import com.pk.junkchat_backend.service.SessionDirectory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+// junkchat.cluster.mode=local (default): single instance, or several contexts in one JVM.
+// junkchat.cluster.mode=postgres: session directory in the database, fan-out over LISTEN/NOTIFY.
+@Configuration
+public class ClusterConfig {
+
+    @Value("${junkchat.cluster.node-timeout-seconds:30}")
+    private int nodeTimeoutSeconds;
+
+    @Bean
+    @ConditionalOnProperty(name = "junkchat.cluster.mode", havingValue = "local", matchIfMissing = true)
+    public SessionDirectory inMemorySessionDirectory() {
+        return new InMemorySessionDirectory();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "junkchat.cluster.mode", havingValue = "local", matchIfMissing = true)
+    public ClusterTransport inProcessClusterTransport() {
+        return new InProcessClusterTransport();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "junkchat.cluster.mode", havingValue = "postgres")
+    public SessionDirectory jdbcSessionDirectory(JdbcTemplate jdbcTemplate) {
+        return new JdbcSessionDirectory(jdbcTemplate, nodeTimeoutSeconds);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "junkchat.cluster.mode", havingValue = "postgres")
+    public ClusterTransport postgresClusterTransport(DataSource dataSource, JdbcTemplate jdbcTemplate) {
+        return new PostgresClusterTransport(dataSource, jdbcTemplate);
+    }
+}
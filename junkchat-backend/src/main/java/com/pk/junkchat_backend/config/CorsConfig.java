@@ -1,5 +1,6 @@
 package com.pk.junkchat_backend.config;
 
+import com.pk.junkchat_backend.controller.MessageController;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
@@ -15,6 +16,7 @@ public class CorsConfig implements WebMvcConfigurer {
                 .allowedOrigins(frontend_url)
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                 .allowedHeaders("*")
+                .exposedHeaders(MessageController.NEXT_CURSOR_HEADER)
                 .allowCredentials(true);
     }
 }
\ No newline at end of file
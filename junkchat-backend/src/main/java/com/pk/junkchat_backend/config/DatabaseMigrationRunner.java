@@ -0,0 +1,256 @@
+package com.pk.junkchat_backend.config;
+
+import com.pk.junkchat_backend.service.AvatarStorageService;
+import com.pk.junkchat_backend.service.MessagePartitionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schema changes that ddl-auto=update cannot express: backfills, deduplication, indexes and the switch to a
+ * partitioned message table. Every step is idempotent, so it is safe to run on every startup against a live
+ * database. They run in autocommit mode, in small batches or CONCURRENTLY; the one exclusive lock, for the
+ * partition conversion, is held only for catalog changes once the table scans are done.
+ *
+ * Steps run in order, each on its own. A required step (one that later steps or the application rely on)
+ * aborts startup when it fails; an optional one is logged and the remaining steps still run.
+ */
+@Component
+@Order(0)
+public class DatabaseMigrationRunner implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseMigrationRunner.class);
+
+    private static final int BACKFILL_BATCH_SIZE = 5000;
+
+    private static final int LEGACY_HEADROOM_HOURS = 24;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MessagePartitionService messagePartitionService;
+
+    @Autowired
+    private AvatarStorageService avatarStorageService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        // Contact upserts use ON CONFLICT (user_id, contact_id), which needs the unique index
+        required("deduplicate contacts", this::deduplicateContacts);
+        required("create uk_contact_user_contact", () -> createIndexConcurrently("uk_contact_user_contact",
+                "CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS uk_contact_user_contact ON contact (user_id, contact_id)"));
+        // Watcher lookups for presence and typing go by contact_id
+        optional("create idx_contact_contact_id", () -> createIndexConcurrently("idx_contact_contact_id",
+                "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_contact_contact_id ON contact (contact_id)"));
+        // Conversation queries filter on the keys
+        required("backfill conversation keys", this::backfillConversationKeys);
+        // Recreated by the partition conversion if missing
+        optional("create idx_message_conversation", () -> createIndexConcurrently("idx_message_conversation",
+                "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_message_conversation ON message (user_low_id, user_high_id, sent_at, id)"));
+        // Skipping these would bring back hidden messages or mark read ones unread
+        required("migrate hidden messages", this::migrateHiddenMessagesToWatermarks);
+        required("migrate read markers", this::migrateReadArraysToWatermarks);
+        // Message inserts need the partitioned table and a partition for the current hour
+        required("partition message table", this::convertMessageTableToPartitioned);
+        required("create upcoming partitions", messagePartitionService::createUpcomingPartitions);
+        optional("move inline avatars", this::moveInlineAvatarsToStore);
+        optional("create username trigram index", this::createUsernameTrigramIndex);
+        logger.info("Database migrations completed");
+    }
+
+    private void required(String name, Runnable step) {
+        try {
+            step.run();
+        } catch (Exception ex) {
+            throw new IllegalStateException("Database migration step '" + name + "' failed: " + ex.getMessage(), ex);
+        }
+    }
+
+    private void optional(String name, Runnable step) {
+        try {
+            step.run();
+        } catch (Exception ex) {
+            logger.error("Database migration step '{}' failed, continuing: {}", name, ex.getMessage(), ex);
+        }
+    }
+
+    private void deduplicateContacts() {
+        int removed = jdbcTemplate.update(
+                "DELETE FROM contact a USING contact b WHERE a.user_id = b.user_id AND a.contact_id = b.contact_id AND a.id > b.id");
+        if (removed > 0) {
+            logger.info("Removed {} duplicate contact rows", removed);
+        }
+    }
+
+    private void backfillConversationKeys() {
+        int total = 0;
+        int updated;
+        do {
+            updated = jdbcTemplate.update(
+                    "UPDATE message SET user_low_id = LEAST(sender_id, recipient_id), user_high_id = GREATEST(sender_id, recipient_id) " +
+                            "WHERE id IN (SELECT id FROM message WHERE user_low_id IS NULL LIMIT ?)", BACKFILL_BATCH_SIZE);
+            total += updated;
+        } while (updated == BACKFILL_BATCH_SIZE);
+        if (total > 0) {
+            logger.info("Backfilled conversation keys for {} messages", total);
+        }
+    }
+
+    // Replaces the per-row hidden_for_user_ids arrays with one cleared_before watermark per (user, contact)
+    private void migrateHiddenMessagesToWatermarks() {
+        if (!columnExists("message", "hidden_for_user_ids")) {
+            return;
+        }
+        int migrated = jdbcTemplate.update(
+                "INSERT INTO conversation_watermark (user_id, contact_id, cleared_before) " +
+                        "SELECT h.user_id, CASE WHEN m.sender_id = h.user_id THEN m.recipient_id ELSE m.sender_id END, MAX(m.sent_at) " +
+                        "FROM message m CROSS JOIN LATERAL unnest(m.hidden_for_user_ids) AS h(user_id) GROUP BY 1, 2 " +
+                        "ON CONFLICT (user_id, contact_id) DO UPDATE SET cleared_before = GREATEST(conversation_watermark.cleared_before, EXCLUDED.cleared_before)");
+        jdbcTemplate.execute("ALTER TABLE message DROP COLUMN hidden_for_user_ids");
+        logger.info("Migrated {} hidden conversations to watermarks and dropped message.hidden_for_user_ids", migrated);
+    }
+
+    // Replaces the per-row read_by_user_ids arrays with one read_up_to watermark per (reader, contact): the newest message the reader had read
+    private void migrateReadArraysToWatermarks() {
+        if (!columnExists("message", "read_by_user_ids")) {
+            return;
+        }
+        int migrated = jdbcTemplate.update(
+                "INSERT INTO conversation_watermark (user_id, contact_id, read_up_to, read_up_to_id) " +
+                        "SELECT DISTINCT ON (m.recipient_id, m.sender_id) m.recipient_id, m.sender_id, m.sent_at, m.id " +
+                        "FROM message m WHERE m.recipient_id = ANY(m.read_by_user_ids) " +
+                        "ORDER BY m.recipient_id, m.sender_id, m.sent_at DESC, m.id DESC " +
+                        "ON CONFLICT (user_id, contact_id) DO UPDATE SET read_up_to = EXCLUDED.read_up_to, read_up_to_id = EXCLUDED.read_up_to_id");
+        jdbcTemplate.execute("ALTER TABLE message DROP COLUMN read_by_user_ids");
+        logger.info("Migrated {} read conversations to watermarks and dropped message.read_by_user_ids", migrated);
+    }
+
+    /**
+     * Turns the plain message table into one range-partitioned by sent_at. The existing table is kept as
+     * message_legacy and attached as the partition for everything before the boundary, so no rows are copied;
+     * it is dropped like any other partition once it falls out of retention.
+     *
+     * Everything that reads the whole table happens first, without blocking writes: a NOT VALID check matching
+     * the partition bound, validated under SHARE UPDATE EXCLUSIVE, and the (id, sent_at) unique index built
+     * CONCURRENTLY. The attach then finds both and only touches the catalog while it holds the exclusive lock.
+     * The boundary leaves a day of headroom because the check already rejects newer rows until the attach.
+     */
+    private void convertMessageTableToPartitioned() {
+        if (messagePartitionService.isPartitioned()) {
+            return;
+        }
+        String boundary = LocalDateTime.now(ZoneId.of("UTC")).truncatedTo(ChronoUnit.HOURS).plusHours(LEGACY_HEADROOM_HOURS)
+                .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        try {
+            // Replaces a check left by an earlier attempt, whose boundary may already have passed
+            jdbcTemplate.execute("ALTER TABLE message DROP CONSTRAINT IF EXISTS message_legacy_bound");
+            jdbcTemplate.execute("ALTER TABLE message ADD CONSTRAINT message_legacy_bound " +
+                    "CHECK (sent_at IS NOT NULL AND sent_at < '" + boundary + "') NOT VALID");
+            jdbcTemplate.execute("ALTER TABLE message VALIDATE CONSTRAINT message_legacy_bound");
+            // No scan: the validated check already proves it
+            jdbcTemplate.execute("ALTER TABLE message ALTER COLUMN sent_at SET NOT NULL");
+            createIndexConcurrently("message_legacy_id_sent_at_idx",
+                    "CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS message_legacy_id_sent_at_idx ON message (id, sent_at)");
+        } catch (RuntimeException ex) {
+            // Left in place, the check would start rejecting inserts once the boundary passes
+            jdbcTemplate.execute("ALTER TABLE message DROP CONSTRAINT IF EXISTS message_legacy_bound");
+            throw ex;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("LOCK TABLE message IN ACCESS EXCLUSIVE MODE");
+            // message_seq already exists and is past every id; MessageSequenceInitializer runs before any runner
+            jdbcTemplate.execute("ALTER TABLE message ALTER COLUMN id DROP IDENTITY IF EXISTS");
+            jdbcTemplate.execute("ALTER TABLE message ALTER COLUMN id DROP DEFAULT");
+            jdbcTemplate.execute("ALTER TABLE message RENAME TO message_legacy");
+            jdbcTemplate.execute("ALTER TABLE message_legacy RENAME CONSTRAINT message_pkey TO message_legacy_pkey");
+            jdbcTemplate.execute("ALTER INDEX IF EXISTS idx_message_conversation RENAME TO message_legacy_conversation_idx");
+            jdbcTemplate.execute("CREATE TABLE message (LIKE message_legacy INCLUDING DEFAULTS) PARTITION BY RANGE (sent_at)");
+            jdbcTemplate.execute("ALTER TABLE message ALTER COLUMN id SET DEFAULT nextval('message_seq')");
+            jdbcTemplate.execute("ALTER SEQUENCE message_seq OWNED BY message.id");
+            // Both are empty on the new parent; the attach reuses the legacy table's FKs and unique index
+            jdbcTemplate.execute("ALTER TABLE message ADD PRIMARY KEY (id, sent_at)");
+            jdbcTemplate.execute("ALTER TABLE message ADD FOREIGN KEY (sender_id) REFERENCES users (id)");
+            jdbcTemplate.execute("ALTER TABLE message ADD FOREIGN KEY (recipient_id) REFERENCES users (id)");
+            // Skips the validation scan: message_legacy_bound implies the partition bound
+            jdbcTemplate.execute("ALTER TABLE message ATTACH PARTITION message_legacy FOR VALUES FROM (MINVALUE) TO ('" + boundary + "')");
+            jdbcTemplate.execute("ALTER TABLE message_legacy DROP CONSTRAINT message_legacy_bound");
+            // Picks up message_legacy_conversation_idx as the legacy partition's index instead of rebuilding it
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_message_conversation ON message (user_low_id, user_high_id, sent_at, id)");
+        });
+        logger.info("Converted message to a partitioned table; legacy rows cover everything before {}", boundary);
+    }
+
+    private boolean columnExists(String table, String column) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = current_schema() AND table_name = ? AND column_name = ?",
+                Integer.class, table, column);
+        return count != null && count > 0;
+    }
+
+    // Base64 pictures stored inline in users.profile_pic move to the avatar store; the column keeps the URL
+    private void moveInlineAvatarsToStore() {
+        long lastId = 0;
+        int moved = 0;
+        List<Map<String, Object>> rows;
+        do {
+            rows = jdbcTemplate.queryForList(
+                    "SELECT id, profile_pic FROM users WHERE profile_pic LIKE 'data:%' AND id > ? ORDER BY id LIMIT 50", lastId);
+            for (Map<String, Object> row : rows) {
+                lastId = ((Number) row.get("id")).longValue();
+                try {
+                    String url = avatarStorageService.store((String) row.get("profile_pic"));
+                    jdbcTemplate.update("UPDATE users SET profile_pic = ? WHERE id = ?", url, lastId);
+                    moved++;
+                } catch (Exception ex) {
+                    logger.warn("Could not move profile picture of user {} to the avatar store: {}", lastId, ex.getMessage());
+                }
+            }
+        } while (rows.size() == 50);
+        if (moved > 0) {
+            logger.info("Moved {} inline profile pictures to the avatar store", moved);
+        }
+    }
+
+    // Serves user search until UsernameSearchIndex is loaded; needs the pg_trgm extension
+    private void createUsernameTrigramIndex() {
+        try {
+            jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+            createIndexConcurrently("idx_users_username_trgm",
+                    "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_users_username_trgm ON users USING gin (LOWER(username) gin_trgm_ops)");
+        } catch (Exception ex) {
+            logger.warn("Could not create the username trigram index, search falls back to a scan until the index is loaded: {}", ex.getMessage());
+        }
+    }
+
+    // A failed CONCURRENTLY build leaves an invalid index behind that IF NOT EXISTS would keep skipping
+    private void createIndexConcurrently(String indexName, String ddl) {
+        Boolean valid = jdbcTemplate.query(
+                "SELECT i.indisvalid FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid WHERE c.relname = ?",
+                rs -> rs.next() ? rs.getBoolean(1) : null, indexName);
+        if (Boolean.FALSE.equals(valid)) {
+            logger.warn("Dropping invalid index {} before rebuilding it", indexName);
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + indexName);
+        }
+        if (!Boolean.TRUE.equals(valid)) {
+            jdbcTemplate.execute(ddl);
+            logger.info("Created index {}", indexName);
+        }
+    }
+}
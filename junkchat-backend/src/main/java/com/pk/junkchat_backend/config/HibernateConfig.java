@@ -0,0 +1,22 @@
+package com.pk.junkchat_backend.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class HibernateConfig {
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernatePropertiesCustomizer() {
+        return properties -> {
+            // Without this ddl-auto=update does not see the partitioned message table and tries to recreate it
+            properties.putIfAbsent(AvailableSettings.EXTRA_PHYSICAL_TABLE_TYPES, "PARTITIONED TABLE");
+            // message_seq is switched to INCREMENT BY 50 by MessageSequenceInitializer right after schema update
+            properties.putIfAbsent(AvailableSettings.SEQUENCE_INCREMENT_SIZE_MISMATCH_STRATEGY, "fix");
+            properties.putIfAbsent(AvailableSettings.STATEMENT_BATCH_SIZE, 50);
+            properties.putIfAbsent(AvailableSettings.ORDER_INSERTS, true);
+        };
+    }
+}
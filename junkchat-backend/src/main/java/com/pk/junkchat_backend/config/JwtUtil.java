@@ -1,13 +1,25 @@
 package com.pk.junkchat_backend.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import io.jsonwebtoken.SignatureAlgorithm;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Date;
+import java.util.HexFormat;
 import java.util.function.Function;
 
 @Component
@@ -16,8 +28,33 @@ public class JwtUtil {
     @Value("${jwt.secret}")
     private String secret;
 
-    private Key getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes());
+    @Value("${jwt.cache.max-size:50000}")
+    private long cacheMaxSize;
+
+    @Value("${jwt.cache.ttl-minutes:30}")
+    private long cacheTtlMinutes;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Built once; both are immutable and safe to share between threads
+    private Key signingKey;
+    private JwtParser parser;
+
+    // SHA-256 of a token whose signature has already been verified -> its claims.
+    // Only successfully verified tokens are cached, so a hit never skips a check that could fail.
+    private Cache<String, Claims> verifiedClaims;
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(secret.getBytes());
+        parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+        verifiedClaims = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterAccess(Duration.ofMinutes(cacheTtlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedClaims, "jwt.verified-claims");
     }
 
     public String generateToken(String username) {
@@ -25,47 +62,68 @@ public class JwtUtil {
                 .setSubject(username)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 // No expiration for non-expiring JWT
-                .signWith(getSigningKey(), SignatureAlgorithm.HS512)
+                .signWith(signingKey, SignatureAlgorithm.HS512)
                 .compact();
     }
 
+    /**
+     * Verifies the token (or finds it already verified) and returns its claims, or null if it is invalid.
+     */
+    public Claims parseVerifiedClaims(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        String digest = digest(token);
+        Claims claims = verifiedClaims.getIfPresent(digest);
+        if (claims != null) {
+            return claims;
+        }
+        try {
+            claims = parser.parseClaimsJws(token).getBody();
+        } catch (Exception e) {
+            return null;
+        }
+        if (isTokenExpired(claims)) {
+            return null;
+        }
+        verifiedClaims.put(digest, claims);
+        return claims;
+    }
+
     public String getUsernameFromToken(String token) {
         return getClaimFromToken(token, Claims::getSubject);
     }
 
     public <T> T getClaimFromToken(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        final Claims claims = parseVerifiedClaims(token);
+        if (claims == null) {
+            // Keep the old contract: callers expect an exception for a bad token
+            parser.parseClaimsJws(token);
+        }
         return claimsResolver.apply(claims);
     }
 
     public Boolean validateToken(String token, String username) {
-        try {
-            final String tokenUsername = getUsernameFromToken(token);
-            return tokenUsername.equals(username) && !isTokenExpired(token);
-        } catch (Exception e) {
-            return false;
-        }
+        Claims claims = parseVerifiedClaims(token);
+        return claims != null && claims.getSubject() != null && claims.getSubject().equals(username);
     }
 
-    private Boolean isTokenExpired(String token) {
+    private Boolean isTokenExpired(Claims claims) {
         // Always return false for non-expiring tokens
         return false;
     }
 
     // Keep single-parameter validateToken for other uses
     public Boolean validateToken(String token) {
+        return parseVerifiedClaims(token) != null;
+    }
+
+    private String digest(String token) {
         try {
-            Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(token);
-            return true;
-        } catch (Exception e) {
-            return false;
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+package com.pk.junkchat_backend.config;
+
+import com.pk.junkchat_backend.model.Message;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Puts message_seq into the shape pooled id allocation relies on: INCREMENT BY Message.ID_ALLOCATION_SIZE and
+ * positioned past every existing message id. Each nextval value v then stands for the ids (v - size, v].
+ *
+ * Runs while the context starts, after Hibernate has updated the schema and before the web server accepts
+ * requests; any failure aborts startup. Without it an upgraded database can hand out ids that already exist,
+ * which the (id, sent_at) key of the partitioned table would not reject.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class MessageSequenceInitializer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageSequenceInitializer.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void initialize() {
+        transactionTemplate.executeWithoutResult(status -> {
+            // Blocks inserts for the moment it takes, so MAX(id) cannot move underneath the setval
+            jdbcTemplate.execute("LOCK TABLE message IN SHARE ROW EXCLUSIVE MODE");
+            jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS message_seq INCREMENT BY " + Message.ID_ALLOCATION_SIZE);
+            jdbcTemplate.execute("ALTER SEQUENCE message_seq INCREMENT BY " + Message.ID_ALLOCATION_SIZE);
+            // Never moves backwards: blocks handed out before a restart stay reserved. The floor of one block keeps a
+            // fresh sequence from returning a value whose block would include ids <= 0.
+            Long value = jdbcTemplate.queryForObject("SELECT setval('message_seq', GREATEST(" +
+                    "(SELECT CASE WHEN is_called THEN last_value ELSE last_value - 1 END FROM message_seq), " +
+                    "COALESCE((SELECT MAX(id) FROM message), 0), " + Message.ID_ALLOCATION_SIZE + "))", Long.class);
+            logger.info("message_seq uses pooled allocation (increment {}), positioned at {}", Message.ID_ALLOCATION_SIZE, value);
+        });
+    }
+}
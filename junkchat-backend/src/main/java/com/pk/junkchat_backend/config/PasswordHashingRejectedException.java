@@ -0,0 +1,12 @@
+package com.pk.junkchat_backend.config;
+
+// Thrown when the password hashing pool is saturated; surfaced to clients as 503 so they back off and retry
+public class PasswordHashingRejectedException extends RuntimeException {
+    public PasswordHashingRejectedException(String message) {
+        super(message);
+    }
+
+    public PasswordHashingRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,132 @@
+package com.pk.junkchat_backend.config;
+
+import com.pk.junkchat_backend.service.ReadYourWritesTracker;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+// Only active when junkchat.datasource.replica.urls lists at least one replica; otherwise Spring Boot's single
+// DataSource is used as before. spring.datasource.* (hikari settings included) still configures the primary.
+@Configuration
+@ConditionalOnExpression("!'${junkchat.datasource.replica.urls:}'.isBlank()")
+public class ReplicaDataSourceConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaDataSourceConfig.class);
+
+    @Value("${junkchat.datasource.replica.urls}")
+    private List<String> replicaUrls;
+
+    // Blank means the primary's credentials
+    @Value("${junkchat.datasource.replica.username:}")
+    private String replicaUsername;
+
+    @Value("${junkchat.datasource.replica.password:}")
+    private String replicaPassword;
+
+    @Value("${junkchat.datasource.replica.pool-size:20}")
+    private int replicaPoolSize;
+
+    @Value("${junkchat.datasource.replica.lag-check-ms:500}")
+    private long lagCheckMillis;
+
+    // Bounds the lag check queries
+    @Value("${junkchat.datasource.replica.check-timeout-seconds:2}")
+    private int checkTimeoutSeconds;
+
+    // pgjdbc socketTimeout for replica connections, so a hung replica cannot hold a reader forever
+    @Value("${junkchat.datasource.replica.socket-timeout-seconds:30}")
+    private int socketTimeoutSeconds;
+
+    // How long a read waits for a replica connection before failing over to the primary
+    @Value("${junkchat.datasource.replica.connection-timeout-ms:1000}")
+    private long connectionTimeoutMillis;
+
+    @Value("${junkchat.cluster.mode:local}")
+    private String clusterMode;
+
+    // Confirms that the load balancer pins each user to one instance; see ReadYourWritesTracker
+    @Value("${junkchat.datasource.replica.sticky-load-balancing:false}")
+    private boolean stickyLoadBalancing;
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties properties, Environment environment,
+                                                             ReadYourWritesTracker tracker, MeterRegistry meterRegistry) {
+        if ("postgres".equals(clusterMode) && !stickyLoadBalancing) {
+            throw new IllegalStateException("Read replicas with junkchat.cluster.mode=postgres need sticky load balancing: " +
+                    "recent writes are tracked per instance, so a user whose requests alternate between instances could read " +
+                    "stale data. Pin users to instances and set junkchat.datasource.replica.sticky-load-balancing=true.");
+        }
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariConfig config = new HikariConfig();
+            primary.copyStateTo(config);
+            config.setJdbcUrl(withTimeouts(url.trim()));
+            if (!replicaUsername.isBlank()) {
+                config.setUsername(replicaUsername);
+                config.setPassword(replicaPassword);
+            }
+            config.setMaximumPoolSize(replicaPoolSize);
+            config.setConnectionTimeout(connectionTimeoutMillis);
+            config.setPoolName("replica-" + replicas.size());
+            config.setReadOnly(true);
+            // A replica that is down at startup is retried by the lag check instead of failing the application
+            config.setInitializationFailTimeout(-1);
+            replicas.add(new HikariDataSource(config));
+        }
+        logger.info("Routing read-only transactions to {} replica(s)", replicas.size());
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replicas, tracker, meterRegistry, checkTimeoutSeconds);
+        routing.start(lagCheckMillis);
+        return routing;
+    }
+
+    // Adds socket and connect timeouts unless the URL sets its own; the primary's data source properties are shared
+    // with the replica configs by copyStateTo, so they cannot carry replica-only settings
+    private String withTimeouts(String url) {
+        StringBuilder result = new StringBuilder(url);
+        char separator = url.contains("?") ? '&' : '?';
+        if (!url.contains("socketTimeout=")) {
+            result.append(separator).append("socketTimeout=").append(socketTimeoutSeconds);
+            separator = '&';
+        }
+        if (!url.contains("connectTimeout=")) {
+            result.append(separator).append("connectTimeout=").append(Math.max(1, connectionTimeoutMillis / 1000));
+        }
+        return result.toString();
+    }
+
+    // The DataSource everything else (JPA, JdbcTemplate, the cluster transport) uses. Connections are only taken
+    // at the first statement, once the transaction's read-only flag decides where they come from.
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy();
+        proxy.setTargetDataSource(replicaRoutingDataSource);
+        proxy.setDefaultAutoCommit(true);
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        proxy.afterPropertiesSet();
+        return proxy;
+    }
+}
@@ -0,0 +1,205 @@
+package com.pk.junkchat_backend.config;
+
+import com.pk.junkchat_backend.service.ReadYourWritesTracker;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions declared by this application's services to a replica and everything else to the
+ * primary. Must sit behind a LazyConnectionDataSourceProxy, so the connection is taken after the transaction's
+ * read-only flag is known. Spring Data's own CRUD methods are read-only too but stay on the primary, since they
+ * are used in read-modify-write sequences.
+ *
+ * Replica lag is tracked by LSN: every check samples the primary's current WAL position, and a replica that has
+ * replayed past a sample holds everything committed before that sample was taken. A user who wrote recently
+ * reads from the primary for at least the sticky window and until some replica has caught up with the write.
+ * Replicas that fail, or fall more than max lag behind, are skipped until a later check finds them healthy.
+ * The check runs on a thread of its own with a query timeout, so a hanging replica delays nothing but its own
+ * next check.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    // Read-only transactions named after methods in this package are routed; see class comment
+    private static final String APPLICATION_PACKAGE = "com.pk.junkchat_backend.";
+
+    private final HikariDataSource primary;
+    private final List<Replica> replicas;
+    private final ReadYourWritesTracker tracker;
+    private final JdbcTemplate primaryJdbcTemplate;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    // (sample time, primary LSN), oldest first; only touched by checkLag
+    private final Deque<long[]> lsnSamples = new ArrayDeque<>();
+    private final Counter replicaReads;
+    private final Counter primaryReads;
+    private ScheduledExecutorService lagChecker;
+
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicaPools, ReadYourWritesTracker tracker,
+                                    MeterRegistry meterRegistry, int checkTimeoutSeconds) {
+        this.primary = primary;
+        this.replicas = replicaPools.stream().map(pool -> new Replica(pool, checkTimeoutSeconds)).toList();
+        this.tracker = tracker;
+        this.primaryJdbcTemplate = new JdbcTemplate(primary);
+        this.primaryJdbcTemplate.setQueryTimeout(checkTimeoutSeconds);
+        this.replicaReads = meterRegistry.counter("datasource.reads", "target", "replica");
+        this.primaryReads = meterRegistry.counter("datasource.reads", "target", "primary");
+        for (Replica replica : replicas) {
+            Gauge.builder("datasource.replica.lag", replica, r -> r.up ? System.currentTimeMillis() - r.caughtUpTo : -1)
+                    .tag("replica", replica.name).baseUnit("milliseconds").register(meterRegistry);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Replica replica = chooseReplica();
+        if (replica != null) {
+            try {
+                Connection connection = replica.pool.getConnection();
+                replicaReads.increment();
+                return connection;
+            } catch (SQLException ex) {
+                replica.up = false;
+                logger.warn("Replica {} unavailable, reading from primary until the next lag check: {}", replica.name, ex.getMessage());
+                primaryReads.increment();
+            }
+        } else if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            primaryReads.increment();
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    private Replica chooseReplica() {
+        if (replicas.isEmpty() || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return null;
+        }
+        String name = TransactionSynchronizationManager.getCurrentTransactionName();
+        if (name == null || !name.startsWith(APPLICATION_PACKAGE)) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        long wroteAt = tracker.lastWriteOfCurrentUser();
+        if (now - wroteAt < tracker.getStickyMillis()) {
+            return null;
+        }
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.up && replica.caughtUpTo >= wroteAt && now - replica.caughtUpTo <= tracker.getMaxLagMillis()) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    public void start(long lagCheckMillis) {
+        lagChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lagChecker.scheduleWithFixedDelay(() -> {
+            try {
+                checkLag();
+            } catch (Exception ex) {
+                logger.error("Replica lag check failed: {}", ex.getMessage(), ex);
+            }
+        }, 0, lagCheckMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void checkLag() {
+        long now = System.currentTimeMillis();
+        Long primaryLsn;
+        try {
+            primaryLsn = primaryJdbcTemplate.queryForObject("SELECT pg_wal_lsn_diff(pg_current_wal_lsn(), '0/0')::bigint", Long.class);
+        } catch (Exception ex) {
+            logger.warn("Could not read primary WAL position: {}", ex.getMessage());
+            return;
+        }
+        lsnSamples.addLast(new long[]{now, primaryLsn});
+        // Older samples cannot make a replica usable again
+        while (lsnSamples.size() > 1 && lsnSamples.peekFirst()[0] < now - tracker.getMaxLagMillis()) {
+            lsnSamples.removeFirst();
+        }
+        for (Replica replica : replicas) {
+            try {
+                replica.jdbcTemplate.query("SELECT pg_is_in_recovery(), pg_wal_lsn_diff(pg_last_wal_replay_lsn(), '0/0')::bigint", rs -> {
+                    if (!rs.getBoolean(1)) {
+                        // Not a standby, e.g. a second local instance for testing: nothing to measure, treat as current
+                        replica.caughtUpTo = now;
+                        return;
+                    }
+                    long replayLsn = rs.getLong(2);
+                    Iterator<long[]> samples = lsnSamples.descendingIterator();
+                    while (samples.hasNext()) {
+                        long[] sample = samples.next();
+                        if (sample[1] <= replayLsn) {
+                            replica.caughtUpTo = Math.max(replica.caughtUpTo, sample[0]);
+                            break;
+                        }
+                    }
+                });
+                if (!replica.up) {
+                    logger.info("Replica {} is available for reads", replica.name);
+                }
+                replica.up = true;
+            } catch (Exception ex) {
+                if (replica.up) {
+                    logger.warn("Replica {} failed its lag check: {}", replica.name, ex.getMessage());
+                }
+                replica.up = false;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (lagChecker != null) {
+            lagChecker.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+        primary.close();
+    }
+
+    private static class Replica {
+        private final HikariDataSource pool;
+        private final JdbcTemplate jdbcTemplate;
+        private final String name;
+        // Everything committed on the primary before this time (epoch millis) has been replayed here
+        private volatile long caughtUpTo;
+        private volatile boolean up;
+
+        Replica(HikariDataSource pool, int checkTimeoutSeconds) {
+            this.pool = pool;
+            this.jdbcTemplate = new JdbcTemplate(pool);
+            this.jdbcTemplate.setQueryTimeout(checkTimeoutSeconds);
+            this.name = pool.getPoolName();
+        }
+    }
+}
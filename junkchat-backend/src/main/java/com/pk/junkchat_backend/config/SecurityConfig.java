@@ -1,8 +1,10 @@
 package com.pk.junkchat_backend.config;
 
+import com.pk.junkchat_backend.controller.MessageController;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -24,6 +26,19 @@ public class SecurityConfig {
     @Value("${frontend.url}")
     private String frontend_url;
 
+    @Value("${security.password.bcrypt-strength:10}")
+    private int bcryptStrength;
+
+    // 0 = one thread per available core
+    @Value("${security.password.hashing-threads:0}")
+    private int hashingThreads;
+
+    @Value("${security.password.hashing-queue-capacity:64}")
+    private int hashingQueueCapacity;
+
+    @Value("${security.password.hashing-timeout-ms:5000}")
+    private long hashingTimeoutMillis;
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http, JwtAuthenticationFilter jwtAuthenticationFilter) throws Exception {
         http
@@ -32,6 +47,8 @@ public class SecurityConfig {
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/api/auth/**", "/ws/**").permitAll()
+                        // Avatars are loaded by <img> tags, which cannot send the bearer token
+                        .requestMatchers(HttpMethod.GET, "/api/avatars/**").permitAll()
                         .anyRequest().authenticated()
                 )
                 .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
@@ -45,7 +62,9 @@ public class SecurityConfig {
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        int threads = hashingThreads > 0 ? hashingThreads : Runtime.getRuntime().availableProcessors();
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(bcryptStrength), threads,
+                hashingQueueCapacity, hashingTimeoutMillis);
     }
 
     @Bean
@@ -55,6 +74,7 @@ public class SecurityConfig {
         configuration.setAllowedOrigins(Arrays.asList(frontend_url));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
         configuration.setAllowedHeaders(Arrays.asList("*"));
+        configuration.setExposedHeaders(Arrays.asList(MessageController.NEXT_CURSOR_HEADER));
         configuration.setAllowCredentials(true);
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", configuration);
@@ -0,0 +1,90 @@
+package com.pk.junkchat_backend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Only active with spring.threads.virtual.enabled. Streams the JFR jdk.VirtualThreadPinned event (a virtual thread
+ * blocked while holding a monitor, so its carrier thread is blocked too) into a counter and a rate-limited warning
+ * with the pinning stack, so we can tell whether running on virtual threads is actually safe under load.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadPinningMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private static final int STACK_DEPTH = 12;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${junkchat.virtual-threads.pinned-threshold-ms:20}")
+    private long thresholdMillis;
+
+    @Value("${junkchat.virtual-threads.pinned-log-interval-ms:60000}")
+    private long logIntervalMillis;
+
+    private RecordingStream recordingStream;
+    private Counter pinnedCounter;
+    private final AtomicLong lastLogged = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        pinnedCounter = Counter.builder("jvm.virtual-threads.pinned")
+                .description("Virtual threads pinned to their carrier for longer than the threshold")
+                .register(meterRegistry);
+        try {
+            recordingStream = new RecordingStream();
+            recordingStream.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(thresholdMillis)).withStackTrace();
+            recordingStream.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+            recordingStream.startAsync();
+            logger.info("Watching for virtual thread pinning longer than {} ms", thresholdMillis);
+        } catch (Exception ex) {
+            logger.warn("Could not start JFR pinning monitor: {}", ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCounter.increment();
+        long now = System.currentTimeMillis();
+        long last = lastLogged.get();
+        if (now - last < logIntervalMillis || !lastLogged.compareAndSet(last, now)) {
+            return;
+        }
+        StringBuilder stack = new StringBuilder();
+        if (event.getStackTrace() != null) {
+            List<RecordedFrame> frames = event.getStackTrace().getFrames();
+            for (int i = 0; i < Math.min(STACK_DEPTH, frames.size()); i++) {
+                RecordedFrame frame = frames.get(i);
+                stack.append("\n\tat ").append(frame.getMethod().getType().getName())
+                        .append('.').append(frame.getMethod().getName())
+                        .append(':').append(frame.getLineNumber());
+            }
+        }
+        logger.warn("Virtual thread pinned for {} ms on thread {}{}", event.getDuration().toMillis(),
+                event.getThread() != null ? event.getThread().getJavaName() : "?", stack);
+    }
+}
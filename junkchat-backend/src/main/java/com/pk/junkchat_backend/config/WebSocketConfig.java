@@ -3,11 +3,13 @@ package com.pk.junkchat_backend.config;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 @Configuration
 @EnableWebSocketMessageBroker
@@ -18,10 +20,24 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Autowired
     private WebSocketJwtInterceptor webSocketJwtInterceptor;
 
+    @Autowired
+    private BatchingWebSocketHandlerDecoratorFactory batchingDecoratorFactory;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${junkchat.websocket.outbound-threads:8}")
+    private int outboundThreads;
+
+    @Value("${junkchat.websocket.outbound-queue-capacity:10000}")
+    private int outboundQueueCapacity;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic");
+        // Clients subscribe once to /user/queue/events; the session principal name is the user id
+        config.enableSimpleBroker("/queue");
         config.setApplicationDestinationPrefixes("/app");
+        config.setUserDestinationPrefix("/user");
     }
 
     @Override
@@ -34,5 +50,29 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
         registration.interceptors(webSocketJwtInterceptor);
+        if (virtualThreads) {
+            // Inbound handling blocks on JDBC; with virtual threads the Hikari pool is the only limit
+            registration.executor(new VirtualThreadTaskExecutor("ws-inbound-"));
+        }
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        if (virtualThreads) {
+            registration.executor(new VirtualThreadTaskExecutor("ws-outbound-"));
+            return;
+        }
+        registration.taskExecutor()
+                .corePoolSize(outboundThreads)
+                .maxPoolSize(outboundThreads)
+                .queueCapacity(outboundQueueCapacity);
+    }
+
+    // Spring wraps the batching session in its ConcurrentWebSocketSessionDecorator, i.e. from above. Batching
+    // sendMessage never blocks, so that decorator's send time and buffer limits cannot trigger; the batching
+    // session enforces junkchat.websocket.send-time-limit-ms and max-buffered-bytes itself.
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.addDecoratorFactory(batchingDecoratorFactory);
     }
 }
\ No newline at end of file
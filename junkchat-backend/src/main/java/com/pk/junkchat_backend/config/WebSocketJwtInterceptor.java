@@ -1,5 +1,9 @@
 package com.pk.junkchat_backend.config;
 
+import com.pk.junkchat_backend.model.User;
+import com.pk.junkchat_backend.service.PresenceRegistry;
+import com.pk.junkchat_backend.service.UserService;
+import io.jsonwebtoken.Claims;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
@@ -19,21 +23,34 @@ public class WebSocketJwtInterceptor implements ChannelInterceptor {
     @Autowired
     private JwtUtil jwtUtil;
 
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
         StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
         if (StompCommand.CONNECT.equals(accessor.getCommand())) {
             String authHeader = accessor.getFirstNativeHeader("Authorization");
             if (authHeader != null && authHeader.startsWith("Bearer ")) {
-                String token = authHeader.substring(7);
-                String username = jwtUtil.getUsernameFromToken(token);
-                if (username != null && jwtUtil.validateToken(token, username)) {
+                Claims claims = jwtUtil.parseVerifiedClaims(authHeader.substring(7));
+                User user = claims != null && claims.getSubject() != null ? userService.findByIdentifier(claims.getSubject()) : null;
+                if (user != null) {
+                    // The session principal is the user id: sessions are registered and looked up by id cluster-wide
                     UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(
-                            username, null, new ArrayList<>());
+                            String.valueOf(user.getId()), null, new ArrayList<>());
                     SecurityContextHolder.getContext().setAuthentication(auth);
                     accessor.setUser(auth);
                 }
             }
+        } else if (accessor.getUser() != null) {
+            try {
+                presenceRegistry.touch(Long.valueOf(accessor.getUser().getName()));
+            } catch (NumberFormatException ignored) {
+                // Not one of our id principals
+            }
         }
         return message;
     }
@@ -1,12 +1,14 @@
 package com.pk.junkchat_backend.controller;
 
 import com.pk.junkchat_backend.config.JwtUtil;
+import com.pk.junkchat_backend.config.PasswordHashingRejectedException;
 import com.pk.junkchat_backend.model.User;
 import com.pk.junkchat_backend.service.EmailService;
 import com.pk.junkchat_backend.service.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -14,7 +16,6 @@ import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
@@ -35,14 +36,14 @@ public class AuthController {
     @Autowired
     private EmailService emailService;
 
-    @Autowired
-    private PasswordEncoder passwordEncoder;
-
     @PostMapping("/register")
     public ResponseEntity<?> register(@RequestBody User user) {
         try {
             logger.info("Registering user: {}", user.getUsername());
             return ResponseEntity.ok(userService.registerUser(user));
+        } catch (PasswordHashingRejectedException ex) {
+            logger.warn("Registration rejected for user: {} - {}", user.getUsername(), ex.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(ex.getMessage());
         } catch (Exception ex) {
             logger.error("Registration failed for user: {} - {}", user.getUsername(), ex.getMessage(), ex);
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Registration failed: " + ex.getMessage());
@@ -58,6 +59,9 @@ public class AuthController {
             String jwt = jwtUtil.generateToken(authentication.getName());
             logger.info("Login successful for username: {}", user.getUsername());
             return ResponseEntity.ok(new JwtResponse(jwt));
+        } catch (PasswordHashingRejectedException ex) {
+            logger.warn("Login rejected for username: {} - {}", user.getUsername(), ex.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(ex.getMessage());
         } catch (AuthenticationException ex) {
             logger.error("Authentication failed for username: {} - {}", user.getUsername(), ex.getMessage(), ex);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Authentication failed: " + ex.getMessage());
@@ -91,8 +95,10 @@ public class AuthController {
             logger.info("Password reset attempt with token");
             String username = jwtUtil.getUsernameFromToken(request.getToken());
             User user = userService.findByIdentifier(username);
-            user.setPassword(passwordEncoder.encode(request.getPassword()));
-            userService.updateUser(user.getId(), user);
+            // updateUser hashes the new password
+            User update = new User();
+            update.setPassword(request.getPassword());
+            userService.updateUser(user.getId(), update);
             logger.info("Password reset successful for username: {}", username);
             return ResponseEntity.ok("Password reset successfully");
         } catch (UsernameNotFoundException ex) {
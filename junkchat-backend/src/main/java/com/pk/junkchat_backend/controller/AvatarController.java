@@ -0,0 +1,79 @@
+package com.pk.junkchat_backend.controller;
+
+import com.pk.junkchat_backend.service.AvatarStorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@RestController
+@RequestMapping("/api/avatars")
+public class AvatarController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarController.class);
+
+    // Tomcat's sendfile hand-off: the connector streams the file from the page cache after the servlet returns
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    // A thumbnail that is still being rendered is answered with the original, which must not be cached for good
+    private static final String SHORT_LIVED = "public, max-age=60";
+
+    @Autowired
+    private AvatarStorageService avatarStorageService;
+
+    @GetMapping("/{name:.+}")
+    public void getAvatar(@PathVariable String name, HttpServletRequest request, HttpServletResponse response) {
+        try {
+            Path path = avatarStorageService.resolve(name);
+            String cacheControl = IMMUTABLE;
+            if (path == null) {
+                path = avatarStorageService.resolveOriginal(name);
+                cacheControl = SHORT_LIVED;
+            }
+            if (path == null) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            // Names are content hashes, so the name itself is a strong validator
+            String etag = "\"" + path.getFileName() + "\"";
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+            String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+            if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            long length = Files.size(path);
+            response.setContentType(avatarStorageService.contentType(path));
+            response.setContentLengthLong(length);
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                request.setAttribute(SENDFILE_FILENAME, path.toString());
+                request.setAttribute(SENDFILE_START, 0L);
+                request.setAttribute(SENDFILE_END, length);
+                return;
+            }
+            try (OutputStream out = response.getOutputStream()) {
+                Files.copy(path, out);
+            }
+        } catch (Exception ex) {
+            logger.error("Error serving avatar {}: {}", name, ex.getMessage(), ex);
+            if (!response.isCommitted()) {
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
+}
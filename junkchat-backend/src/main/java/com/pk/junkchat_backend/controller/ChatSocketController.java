@@ -0,0 +1,192 @@
+package com.pk.junkchat_backend.controller;
+
+import com.pk.junkchat_backend.model.DeliveryEvent;
+import com.pk.junkchat_backend.model.Message;
+import com.pk.junkchat_backend.model.MessageAck;
+import com.pk.junkchat_backend.model.User;
+import com.pk.junkchat_backend.service.ClusterMessagingService;
+import com.pk.junkchat_backend.service.MessageService;
+import com.pk.junkchat_backend.service.TypingService;
+import com.pk.junkchat_backend.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Controller;
+
+import java.security.Principal;
+
+/**
+ * Chat operations over the already-authenticated STOMP session (/app/chat.*), so sending a message needs no HTTP
+ * request, filter chain or token parsing. The session principal name is the user id set on CONNECT.
+ * Results come back as "ack" events on the user's events queue.
+ */
+@Controller
+public class ChatSocketController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatSocketController.class);
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ClusterMessagingService clusterMessagingService;
+
+    @Autowired
+    private TypingService typingService;
+
+    @MessageMapping("/chat.send")
+    public void sendMessage(@Payload ChatSendRequest request, Principal principal) {
+        Long userId = userId(principal);
+        if (userId == null) {
+            return;
+        }
+        try {
+            if (request.getRecipientId() == null || request.getContent() == null || request.getContent().isBlank()) {
+                ack(userId, MessageAck.failed(request.getClientId(), "Recipient and content are required"));
+                return;
+            }
+            User sender = userService.findById(userId).orElse(null);
+            User recipient = userService.findById(request.getRecipientId()).orElse(null);
+            if (sender == null || recipient == null) {
+                logger.warn("Sender or recipient not found: senderId={}, recipientId={}", userId, request.getRecipientId());
+                ack(userId, MessageAck.failed(request.getClientId(), "Recipient not found"));
+                return;
+            }
+            Message message = messageService.sendMessage(sender, recipient, request.getContent());
+            logger.debug("Message {} sent over WebSocket from {} to {}", message.getId(), sender.getId(), recipient.getId());
+            ack(userId, MessageAck.sent(request.getClientId(), message));
+        } catch (Exception ex) {
+            logger.error("Error sending message over WebSocket: {}", ex.getMessage(), ex);
+            ack(userId, MessageAck.failed(request.getClientId(), "Error sending message"));
+        }
+    }
+
+    @MessageMapping("/chat.read")
+    public void markRead(@Payload ChatReadRequest request, Principal principal) {
+        Long userId = userId(principal);
+        if (userId == null) {
+            return;
+        }
+        try {
+            User reader = userService.findById(userId).orElse(null);
+            User contact = request.getContactId() != null ? userService.findById(request.getContactId()).orElse(null) : null;
+            if (reader == null || contact == null) {
+                ack(userId, MessageAck.failed(request.getClientId(), "Contact not found"));
+                return;
+            }
+            messageService.markConversationRead(reader, contact);
+            ack(userId, MessageAck.done(request.getClientId()));
+        } catch (Exception ex) {
+            logger.error("Error marking messages as read over WebSocket: {}", ex.getMessage(), ex);
+            ack(userId, MessageAck.failed(request.getClientId(), "Error marking messages as read"));
+        }
+    }
+
+    // Fire and forget: no ack, nothing stored
+    @MessageMapping("/chat.typing")
+    public void typing(@Payload ChatTypingRequest request, Principal principal) {
+        Long userId = userId(principal);
+        if (userId == null || request.getContactId() == null) {
+            return;
+        }
+        try {
+            typingService.typing(userId, request.getContactId(), request.isTyping());
+        } catch (Exception ex) {
+            logger.error("Error handling typing state: {}", ex.getMessage(), ex);
+        }
+    }
+
+    private Long userId(Principal principal) {
+        if (principal == null) {
+            logger.warn("Rejected STOMP chat request without an authenticated session");
+            return null;
+        }
+        try {
+            return Long.valueOf(principal.getName());
+        } catch (NumberFormatException ex) {
+            logger.warn("Rejected STOMP chat request from principal {}", principal.getName());
+            return null;
+        }
+    }
+
+    private void ack(Long userId, MessageAck ack) {
+        clusterMessagingService.deliver(userId, new DeliveryEvent(DeliveryEvent.ACK, ack));
+    }
+
+    static class ChatSendRequest {
+        private Long recipientId;
+        private String content;
+        private String clientId;
+
+        public Long getRecipientId() {
+            return recipientId;
+        }
+
+        public void setRecipientId(Long recipientId) {
+            this.recipientId = recipientId;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public void setContent(String content) {
+            this.content = content;
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public void setClientId(String clientId) {
+            this.clientId = clientId;
+        }
+    }
+
+    static class ChatTypingRequest {
+        private Long contactId;
+        private boolean typing;
+
+        public Long getContactId() {
+            return contactId;
+        }
+
+        public void setContactId(Long contactId) {
+            this.contactId = contactId;
+        }
+
+        public boolean isTyping() {
+            return typing;
+        }
+
+        public void setTyping(boolean typing) {
+            this.typing = typing;
+        }
+    }
+
+    static class ChatReadRequest {
+        private Long contactId;
+        private String clientId;
+
+        public Long getContactId() {
+            return contactId;
+        }
+
+        public void setContactId(Long contactId) {
+            this.contactId = contactId;
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public void setClientId(String clientId) {
+            this.clientId = clientId;
+        }
+    }
+}
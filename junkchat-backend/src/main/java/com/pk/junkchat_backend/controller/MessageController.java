@@ -1,20 +1,23 @@
 package com.pk.junkchat_backend.controller;
 
 import com.pk.junkchat_backend.model.Message;
+import com.pk.junkchat_backend.model.MessageCursor;
+import com.pk.junkchat_backend.model.MessageView;
 import com.pk.junkchat_backend.model.User;
-import com.pk.junkchat_backend.repository.MessageRepository;
 import com.pk.junkchat_backend.service.MessageService;
 import com.pk.junkchat_backend.service.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api")
@@ -22,32 +25,51 @@ public class MessageController {
 
     private static final Logger logger = LoggerFactory.getLogger(MessageController.class);
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     @Autowired
     private MessageService messageService;
 
     @Autowired
     private UserService userService;
 
-    @Autowired
-    private MessageRepository messageRepository;
-
-    @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    @Value("${junkchat.messages.broadcast-max-recipients:500}")
+    private int broadcastMaxRecipients;
 
     @GetMapping("/messages/{contactId}")
-    public ResponseEntity<List<Message>> getMessages(@PathVariable Long contactId) {
+    public ResponseEntity<List<MessageView>> getMessages(@PathVariable Long contactId,
+                                                         @RequestParam(required = false) String before,
+                                                         @RequestParam(required = false) String after,
+                                                         @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
         try {
             String username = SecurityContextHolder.getContext().getAuthentication().getName();
-            logger.info("Fetching messages for username: {}, contactId: {}", username, contactId);
-            User currentUser = userService.findByIdentifier(username);
+            logger.info("Fetching messages for username: {}, contactId: {}, before: {}, after: {}, limit: {}", username, contactId, before, after, limit);
+            MessageCursor beforeCursor;
+            MessageCursor afterCursor;
+            try {
+                beforeCursor = MessageCursor.parse(before);
+                afterCursor = MessageCursor.parse(after);
+            } catch (IllegalArgumentException ex) {
+                logger.warn("Invalid message cursor: {}", ex.getMessage());
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            }
+            int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+            User currentUser = userService.getCurrentUser();
             User contactUser = userService.findById(contactId).orElse(null);
             if (currentUser == null || contactUser == null) {
                 logger.warn("User or contact not found: username={}, contactId={}", username, contactId);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
             }
-            List<Message> messages = messageService.getMessagesBetweenUsers(currentUser, contactUser);
+            List<Message> messages = messageService.getMessagePage(currentUser, contactUser, beforeCursor, afterCursor, pageSize);
             logger.info("Returning {} messages for user: {}, contact: {}", messages.size(), username, contactUser.getUsername());
-            return ResponseEntity.ok(messages);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            // A full page may have older messages behind it; hand back the cursor to fetch them
+            if (afterCursor == null && messages.size() == pageSize) {
+                response.header(NEXT_CURSOR_HEADER, MessageCursor.of(messages.get(0)).toString());
+            }
+            return response.body(messages.stream().map(MessageView::of).toList());
         } catch (Exception ex) {
             logger.error("Error fetching messages: {}", ex.getMessage(), ex);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
@@ -59,28 +81,14 @@ public class MessageController {
         try {
             String username = SecurityContextHolder.getContext().getAuthentication().getName();
             logger.info("Marking messages as read for username: {}, contactId: {}", username, contactId);
-            User currentUser = userService.findByIdentifier(username);
+            User currentUser = userService.getCurrentUser();
             User contactUser = userService.findById(contactId).orElse(null);
             if (currentUser == null || contactUser == null) {
                 logger.warn("User or contact not found: username={}, contactId={}", username, contactId);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
             }
-            messageRepository.markMessagesAsReadForUser(currentUser.getId(), contactId);
+            messageService.markConversationRead(currentUser, contactUser);
             logger.info("Messages marked as read for user: {}, contact: {}", username, contactUser.getUsername());
-
-            // Update unread count for contact and notify via WebSocket
-            User contactUpdate = new User();
-            contactUpdate.setId(contactUser.getId());
-            contactUpdate.setUsername(contactUser.getUsername());
-            contactUpdate.setProfilePic(contactUser.getProfilePic());
-            Message lastMessage = messageRepository.findLatestMessageBetweenUsers(currentUser.getId(), contactId);
-            if (lastMessage != null) {
-                contactUpdate.setLastMessageContent(lastMessage.getContent());
-                contactUpdate.setLastMessageTime(lastMessage.getSentAt());
-            }
-            contactUpdate.setUnreadCount(getUnreadCount(currentUser.getId(), contactId));
-            messagingTemplate.convertAndSend("/topic/messages/" + currentUser.getId(), contactUpdate);
-
             return ResponseEntity.ok("Messages marked as read");
         } catch (Exception ex) {
             logger.error("Error marking messages as read: {}", ex.getMessage(), ex);
@@ -89,11 +97,11 @@ public class MessageController {
     }
 
     @PostMapping("/messages")
-    public ResponseEntity<Message> sendMessage(@RequestBody SendMessageRequest request) {
+    public ResponseEntity<MessageView> sendMessage(@RequestBody SendMessageRequest request) {
         try {
             String username = SecurityContextHolder.getContext().getAuthentication().getName();
             logger.info("Sending message from username: {} to recipientId: {}", username, request.getRecipientId());
-            User sender = userService.findByIdentifier(username);
+            User sender = userService.getCurrentUser();
             User recipient = userService.findById(request.getRecipientId()).orElse(null);
             if (sender == null || recipient == null) {
                 logger.warn("Sender or recipient not found: sender={}, recipientId={}", username, request.getRecipientId());
@@ -101,60 +109,62 @@ public class MessageController {
             }
             Message message = messageService.sendMessage(sender, recipient, request.getContent());
             logger.info("Message sent from {} to {}: content='{}'", sender.getUsername(), recipient.getUsername(), message.getContent());
-
-            // Send WebSocket notifications for the message
-            messagingTemplate.convertAndSend("/topic/messages/" + sender.getId() + "/" + recipient.getId(), message);
-            messagingTemplate.convertAndSend("/topic/messages/" + recipient.getId() + "/" + sender.getId(), message);
-            logger.debug("Sent message to /topic/messages/{}/{} and /topic/messages/{}/{}", sender.getId(), recipient.getId(), recipient.getId(), sender.getId());
-
-            // Send WebSocket notifications for contact list updates
-            User senderUpdate = new User();
-            senderUpdate.setId(sender.getId());
-            senderUpdate.setUsername(sender.getUsername());
-            senderUpdate.setProfilePic(sender.getProfilePic());
-            senderUpdate.setLastMessageContent(message.getContent());
-            senderUpdate.setLastMessageTime(message.getSentAt());
-            senderUpdate.setUnreadCount(0); // Sender sees their own message
-
-            User recipientUpdate = new User();
-            recipientUpdate.setId(recipient.getId());
-            recipientUpdate.setUsername(recipient.getUsername());
-            recipientUpdate.setProfilePic(recipient.getProfilePic());
-            recipientUpdate.setLastMessageContent(message.getContent());
-            recipientUpdate.setLastMessageTime(message.getSentAt());
-            recipientUpdate.setUnreadCount(getUnreadCount(recipient.getId(), sender.getId()));
-
-            messagingTemplate.convertAndSend("/topic/messages/" + sender.getId(), recipientUpdate);
-            messagingTemplate.convertAndSend("/topic/messages/" + recipient.getId(), senderUpdate);
-            logger.debug("Sent contact update to /topic/messages/{}: recipientId={}, content='{}', time={}, unreadCount={}",
-                    sender.getId(), recipient.getId(), message.getContent(), message.getSentAt(), recipientUpdate.getUnreadCount());
-            logger.debug("Sent contact update to /topic/messages/{}: senderId={}, content='{}', time={}, unreadCount={}",
-                    recipient.getId(), sender.getId(), message.getContent(), message.getSentAt(), senderUpdate.getUnreadCount());
-
-            return ResponseEntity.ok(message);
+            return ResponseEntity.ok(MessageView.of(message));
         } catch (Exception ex) {
             logger.error("Error sending message: {}", ex.getMessage(), ex);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
     }
 
-    private int getUnreadCount(Long recipientId, Long senderId) {
-        List<Message> messages = messageService.getMessagesBetweenUsers(
-                userService.findById(recipientId).orElse(null),
-                userService.findById(senderId).orElse(null)
-        );
-        return (int) messages.stream()
-                .filter(msg -> msg.getSender().getId().equals(senderId) &&
-                        (msg.getReadByUserIds() == null || !containsUserId(msg.getReadByUserIds(), recipientId)))
-                .count();
+    @PostMapping("/messages/broadcast")
+    public ResponseEntity<List<MessageView>> broadcastMessage(@RequestBody BroadcastMessageRequest request) {
+        try {
+            String username = SecurityContextHolder.getContext().getAuthentication().getName();
+            User sender = userService.getCurrentUser();
+            if (sender == null || request.getRecipientIds() == null) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            }
+            Set<Long> recipientIds = new LinkedHashSet<>(request.getRecipientIds());
+            recipientIds.remove(null);
+            recipientIds.remove(sender.getId());
+            logger.info("Broadcasting message from username: {} to {} recipients", username, recipientIds.size());
+            if (recipientIds.isEmpty() || recipientIds.size() > broadcastMaxRecipients) {
+                logger.warn("Rejected broadcast from {} with {} recipients (max {})", username, recipientIds.size(), broadcastMaxRecipients);
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            }
+            List<User> recipients = userService.findAllById(recipientIds);
+            if (recipients.size() != recipientIds.size()) {
+                logger.warn("Broadcast recipients not found: sender={}, requested={}, found={}", username, recipientIds.size(), recipients.size());
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+            }
+            List<Message> messages = messageService.broadcastMessage(sender, recipients, request.getContent());
+            logger.info("Broadcast sent from {} to {} recipients", sender.getUsername(), messages.size());
+            return ResponseEntity.ok(messages.stream().map(MessageView::of).toList());
+        } catch (Exception ex) {
+            logger.error("Error broadcasting message: {}", ex.getMessage(), ex);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+        }
     }
 
-    private boolean containsUserId(Long[] userIds, Long userId) {
-        if (userIds == null) return false;
-        for (Long id : userIds) {
-            if (id != null && id.equals(userId)) return true;
+    static class BroadcastMessageRequest {
+        private List<Long> recipientIds;
+        private String content;
+
+        public List<Long> getRecipientIds() {
+            return recipientIds;
+        }
+
+        public void setRecipientIds(List<Long> recipientIds) {
+            this.recipientIds = recipientIds;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public void setContent(String content) {
+            this.content = content;
         }
-        return false;
     }
 
     static class SendMessageRequest {
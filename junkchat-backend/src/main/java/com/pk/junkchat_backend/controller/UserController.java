@@ -1,24 +1,32 @@
 package com.pk.junkchat_backend.controller;
 
 import com.pk.junkchat_backend.model.Contact;
-import com.pk.junkchat_backend.model.Message;
+import com.pk.junkchat_backend.model.ContactSummary;
+import com.pk.junkchat_backend.model.ConversationSummary;
+import com.pk.junkchat_backend.model.DeliveryEvent;
+import com.pk.junkchat_backend.model.PresenceUpdate;
 import com.pk.junkchat_backend.model.User;
 import com.pk.junkchat_backend.repository.ContactRepository;
 import com.pk.junkchat_backend.repository.MessageRepository;
+import com.pk.junkchat_backend.service.ClusterMessagingService;
+import com.pk.junkchat_backend.service.ConversationSummaryService;
+import com.pk.junkchat_backend.service.ConversationWatermarkService;
+import com.pk.junkchat_backend.service.PresenceService;
+import com.pk.junkchat_backend.service.ReadYourWritesTracker;
+import com.pk.junkchat_backend.service.UnreadCounterService;
 import com.pk.junkchat_backend.service.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api")
@@ -36,14 +44,32 @@ public class UserController {
     private MessageRepository messageRepository;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
+    @Autowired
+    private ConversationWatermarkService conversationWatermarkService;
+
+    @Autowired
+    private ClusterMessagingService clusterMessagingService;
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private ReadYourWritesTracker readYourWritesTracker;
+
+    @Value("${junkchat.search.max-results:50}")
+    private int searchMaxResults;
 
     @GetMapping("/profile")
     public ResponseEntity<?> getProfile() {
         try {
             String username = SecurityContextHolder.getContext().getAuthentication().getName();
             logger.info("Fetching profile for username: {}", username);
-            User user = userService.findByIdentifier(username);
+            User user = userService.getCurrentUser();
             if (user == null) {
                 logger.warn("User not found for username: {}", username);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
@@ -60,11 +86,15 @@ public class UserController {
         try {
             String username = SecurityContextHolder.getContext().getAuthentication().getName();
             logger.info("Updating profile for username: {}", username);
-            User user = userService.findByIdentifier(username);
+            User user = userService.getCurrentUser();
             if (user == null) {
                 logger.warn("User not found for username: {}", username);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
             }
+            if (updatedUser.getProfilePic() != null && updatedUser.getProfilePic().equals(user.getProfilePic())) {
+                // Clients send back the avatar URL they were given when the picture did not change
+                updatedUser.setProfilePic(null);
+            }
             if (updatedUser.getProfilePic() != null && !updatedUser.getProfilePic().isEmpty()) {
                 if (!updatedUser.getProfilePic().startsWith("data:image/")) {
                     logger.warn("Invalid profile picture format for username: {}", username);
@@ -78,9 +108,10 @@ public class UserController {
             User updated = userService.updateUser(user.getId(), updatedUser);
             if (updated != null) {
                 List<Long> contactIds = contactRepository.findContactIdsByUserId(user.getId());
+                DeliveryEvent profileUpdate = new DeliveryEvent(DeliveryEvent.CONTACT, ContactSummary.of(updated));
                 for (Long contactId : contactIds) {
-                    messagingTemplate.convertAndSend("/topic/contacts/" + contactId, updated);
-                    logger.debug("Sent profile update to /topic/contacts/{}: username={}", contactId, updated.getUsername());
+                    clusterMessagingService.deliver(contactId, profileUpdate);
+                    logger.debug("Sent profile update to user {}: username={}", contactId, updated.getUsername());
                 }
                 logger.info("Profile updated for username: {}", username);
                 return ResponseEntity.ok(updated);
@@ -94,42 +125,44 @@ public class UserController {
     }
 
     @GetMapping("/users/search")
-    public ResponseEntity<List<User>> searchUsers(@RequestParam String query) {
+    public ResponseEntity<List<ContactSummary>> searchUsers(@RequestParam String query,
+                                                            @RequestParam(defaultValue = "0") int page,
+                                                            @RequestParam(defaultValue = "20") int limit) {
         String currentUsername = SecurityContextHolder.getContext().getAuthentication().getName();
         logger.info("Searching users with query: {} for username: {}", query, currentUsername);
-        User currentUser = userService.findByIdentifier(currentUsername);
+        User currentUser = userService.getCurrentUser();
         if (currentUser == null) {
             logger.warn("Current user not found: {}", currentUsername);
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
         }
-        // Fetch pinned contacts
-        List<User> pinnedContacts = contactRepository.findByUser(currentUser).stream()
-                .map(Contact::getContact)
-                .collect(Collectors.toList());
-        // Fetch searched users
-        List<User> searchedUsers = query.isEmpty() ? List.of() : userService.searchUsers(query, currentUser.getId());
-        // Combine users
-        Set<User> combinedUsers = new HashSet<>(pinnedContacts);
-        combinedUsers.addAll(searchedUsers);
-
-        // Set last message content and time for all users
-        for (User user : combinedUsers) {
-            Message lastMessage = messageRepository.findLatestMessageBetweenUsers(currentUser.getId(), user.getId());
-            if (lastMessage != null) {
-                user.setLastMessageContent(lastMessage.getContent());
-                user.setLastMessageTime(lastMessage.getSentAt());
-                logger.debug("Set last message for user {} (ID: {}): content='{}', time={}",
-                        user.getUsername(), user.getId(), lastMessage.getContent(), lastMessage.getSentAt());
-            } else {
-                user.setLastMessageContent(null);
-                user.setLastMessageTime(null);
-                logger.debug("No last message found for user {} (ID: {}) with currentUserId={}",
-                        user.getUsername(), user.getId(), currentUser.getId());
+        // Pinned contacts and matching users, each already carrying last message and unread count
+        Map<Long, ContactSummary> combinedUsers = new LinkedHashMap<>();
+        for (ContactSummary contact : userService.getContactSummaries(currentUser.getId())) {
+            combinedUsers.put(contact.getId(), contact);
+        }
+        if (!query.isEmpty()) {
+            int pageSize = Math.max(1, Math.min(limit, searchMaxResults));
+            for (ContactSummary user : userService.searchUsers(query, currentUser.getId(), Math.max(0, page) * pageSize, pageSize)) {
+                combinedUsers.putIfAbsent(user.getId(), user);
             }
         }
 
         logger.info("Returning {} users for query: {}", combinedUsers.size(), query);
-        return ResponseEntity.ok(combinedUsers.stream().toList());
+        return ResponseEntity.ok(List.copyOf(combinedUsers.values()));
+    }
+
+    @GetMapping("/contacts/presence")
+    public ResponseEntity<List<PresenceUpdate>> getContactPresence() {
+        try {
+            User user = userService.getCurrentUser();
+            if (user == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+            }
+            return ResponseEntity.ok(presenceService.getPresence(contactRepository.findContactIdsByUserId(user.getId())));
+        } catch (Exception ex) {
+            logger.error("Error fetching contact presence: {}", ex.getMessage(), ex);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+        }
     }
 
     @PostMapping("/contacts")
@@ -137,7 +170,7 @@ public class UserController {
         try {
             String username = SecurityContextHolder.getContext().getAuthentication().getName();
             logger.info("Adding contact for username: {}, contact: {}", username, request.getUsername());
-            User user = userService.findByIdentifier(username);
+            User user = userService.getCurrentUser();
             if (user == null) {
                 logger.warn("User not found: {}", username);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
@@ -152,15 +185,12 @@ public class UserController {
                 contact.setUser(user);
                 contact.setContact(contactUser);
                 contactRepository.save(contact);
-                Message lastMessage = messageRepository.findLatestMessageBetweenUsers(user.getId(), contactUser.getId());
-                if (lastMessage != null) {
-                    contactUser.setLastMessageContent(lastMessage.getContent());
-                    contactUser.setLastMessageTime(lastMessage.getSentAt());
-                    logger.debug("Set last message for contact {}: content='{}', time={}", contactUser.getUsername(), lastMessage.getContent(), lastMessage.getSentAt());
-                } else {
-                    logger.debug("No last message found for contact {} (ID: {})", contactUser.getUsername(), contactUser.getId());
-                }
-                messagingTemplate.convertAndSend("/topic/contacts/" + user.getId(), contactUser);
+                readYourWritesTracker.recordWrite(user.getId());
+                presenceService.watchersChanged(contactUser.getId());
+                ConversationSummary summary = conversationSummaryService.find(user.getId(), contactUser.getId()).orElse(null);
+                ContactSummary contactEntry = ContactSummary.of(contactUser, summary,
+                        unreadCounterService.getUnreadCount(user.getId(), contactUser.getId()));
+                clusterMessagingService.deliver(user.getId(), new DeliveryEvent(DeliveryEvent.CONTACT, contactEntry));
                 logger.info("Contact added: {} for user: {}", contactUser.getUsername(), username);
             }
             return ResponseEntity.ok("Contact added successfully");
@@ -179,7 +209,7 @@ public class UserController {
             }
             String username = SecurityContextHolder.getContext().getAuthentication().getName();
             logger.info("Removing contact for username: {}, contact: {}", username, request.getUsername());
-            User user = userService.findByIdentifier(username);
+            User user = userService.getCurrentUser();
             if (user == null) {
                 logger.warn("User not found: {}", username);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
@@ -191,8 +221,12 @@ public class UserController {
             }
             if (contactRepository.existsByUserIdAndContactId(user.getId(), contactUser.getId())) {
                 contactRepository.deleteByUserIdAndContactId(user.getId(), contactUser.getId());
-                messageRepository.hideMessagesForUser(user.getId(), contactUser.getId());
-                messagingTemplate.convertAndSend("/topic/contacts/remove/" + user.getId(), contactUser);
+                readYourWritesTracker.recordWrite(user.getId());
+                presenceService.watchersChanged(contactUser.getId());
+                conversationWatermarkService.clearConversation(user.getId(), contactUser.getId());
+                unreadCounterService.reset(user.getId(), contactUser.getId());
+                conversationSummaryService.hide(user.getId(), contactUser.getId());
+                clusterMessagingService.deliver(user.getId(), new DeliveryEvent(DeliveryEvent.CONTACT_REMOVED, ContactSummary.of(contactUser)));
                 logger.info("Contact and messages hidden: {} for user: {}", contactUser.getUsername(), username);
                 return ResponseEntity.ok("Contact and chat removed successfully");
             }
@@ -4,7 +4,7 @@ package com.pk.junkchat_backend.model;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "contact")
+@Table(name = "contact") // unique (user_id, contact_id) index is created by DatabaseMigrationRunner
 public class Contact {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,98 @@
+package com.pk.junkchat_backend.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.LocalDateTime;
+
+// One contact-list entry as seen by its owner; payload of "contact" and "contact-removed" delivery events.
+// Unset fields are left out of the JSON, so clients keep what they already have for them.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ContactSummary {
+    private Long id;
+    private String username;
+    private String profilePic;
+    private String lastMessageContent;
+    private LocalDateTime lastMessageTime;
+    private Integer unreadCount;
+
+    public ContactSummary() {
+    }
+
+    // Used by the JPQL constructor expressions in ContactRepository and UserRepository
+    public ContactSummary(Long id, String username, String profilePic, String lastMessageContent,
+                          LocalDateTime lastMessageTime, Integer unreadCount) {
+        this.id = id;
+        this.username = username;
+        this.profilePic = profilePic;
+        this.lastMessageContent = lastMessageContent;
+        this.lastMessageTime = lastMessageTime;
+        this.unreadCount = unreadCount;
+    }
+
+    // Identity and avatar only, e.g. for a profile change or a removed contact
+    public static ContactSummary of(User user) {
+        return new ContactSummary(user.getId(), user.getUsername(), user.getProfilePic(), null, null, null);
+    }
+
+    public static ContactSummary of(User user, ConversationSummary summary, int unreadCount) {
+        ContactSummary contact = of(user);
+        if (summary != null) {
+            contact.lastMessageContent = summary.getLastMessageContent();
+            contact.lastMessageTime = summary.getLastMessageTime();
+        }
+        contact.unreadCount = unreadCount;
+        return contact;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getProfilePic() {
+        return profilePic;
+    }
+
+    public void setProfilePic(String profilePic) {
+        this.profilePic = profilePic;
+    }
+
+    public String getProfileThumbnail() {
+        return User.thumbnailOf(profilePic);
+    }
+
+    public String getLastMessageContent() {
+        return lastMessageContent;
+    }
+
+    public void setLastMessageContent(String lastMessageContent) {
+        this.lastMessageContent = lastMessageContent;
+    }
+
+    public LocalDateTime getLastMessageTime() {
+        return lastMessageTime;
+    }
+
+    public void setLastMessageTime(LocalDateTime lastMessageTime) {
+        this.lastMessageTime = lastMessageTime;
+    }
+
+    public Integer getUnreadCount() {
+        return unreadCount;
+    }
+
+    public void setUnreadCount(Integer unreadCount) {
+        this.unreadCount = unreadCount;
+    }
+}
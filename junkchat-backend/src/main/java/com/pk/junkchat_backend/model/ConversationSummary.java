@@ -0,0 +1,89 @@
+package com.pk.junkchat_backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "conversation_summary",
+        uniqueConstraints = @UniqueConstraint(name = "uk_conversation_summary_user_contact", columnNames = {"user_id", "contact_id"}))
+public class ConversationSummary {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // One row per side of a conversation, so hiding a chat only affects its owner
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "contact_id", nullable = false)
+    private Long contactId;
+
+    @Column(name = "last_message_id")
+    private Long lastMessageId;
+
+    @Column(name = "last_sender_id")
+    private Long lastSenderId;
+
+    @Column(name = "last_message_content")
+    private String lastMessageContent;
+
+    @Column(name = "last_message_time")
+    private LocalDateTime lastMessageTime;
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getContactId() {
+        return contactId;
+    }
+
+    public void setContactId(Long contactId) {
+        this.contactId = contactId;
+    }
+
+    public Long getLastMessageId() {
+        return lastMessageId;
+    }
+
+    public void setLastMessageId(Long lastMessageId) {
+        this.lastMessageId = lastMessageId;
+    }
+
+    public Long getLastSenderId() {
+        return lastSenderId;
+    }
+
+    public void setLastSenderId(Long lastSenderId) {
+        this.lastSenderId = lastSenderId;
+    }
+
+    public String getLastMessageContent() {
+        return lastMessageContent;
+    }
+
+    public void setLastMessageContent(String lastMessageContent) {
+        this.lastMessageContent = lastMessageContent;
+    }
+
+    public LocalDateTime getLastMessageTime() {
+        return lastMessageTime;
+    }
+
+    public void setLastMessageTime(LocalDateTime lastMessageTime) {
+        this.lastMessageTime = lastMessageTime;
+    }
+}
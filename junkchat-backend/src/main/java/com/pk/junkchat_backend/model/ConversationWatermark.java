@@ -0,0 +1,87 @@
+package com.pk.junkchat_backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "conversation_watermark",
+        uniqueConstraints = @UniqueConstraint(name = "uk_conversation_watermark_user_contact", columnNames = {"user_id", "contact_id"}))
+public class ConversationWatermark {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "contact_id", nullable = false)
+    private Long contactId;
+
+    // Messages sent at or before this point are hidden from user_id ("clear chat")
+    @Column(name = "cleared_before")
+    private LocalDateTime clearedBefore;
+
+    // user_id has read every message from contact_id ordered at or before (read_up_to, read_up_to_id)
+    @Column(name = "read_up_to")
+    private LocalDateTime readUpTo;
+
+    @Column(name = "read_up_to_id")
+    private Long readUpToId;
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getContactId() {
+        return contactId;
+    }
+
+    public void setContactId(Long contactId) {
+        this.contactId = contactId;
+    }
+
+    public LocalDateTime getClearedBefore() {
+        return clearedBefore;
+    }
+
+    public void setClearedBefore(LocalDateTime clearedBefore) {
+        this.clearedBefore = clearedBefore;
+    }
+
+    public LocalDateTime getReadUpTo() {
+        return readUpTo;
+    }
+
+    public void setReadUpTo(LocalDateTime readUpTo) {
+        this.readUpTo = readUpTo;
+    }
+
+    public Long getReadUpToId() {
+        return readUpToId;
+    }
+
+    public void setReadUpToId(Long readUpToId) {
+        this.readUpToId = readUpToId;
+    }
+
+    public boolean hasRead(Message message) {
+        if (readUpTo == null || readUpToId == null) {
+            return false;
+        }
+        int byTime = message.getSentAt().compareTo(readUpTo);
+        return byTime < 0 || (byTime == 0 && message.getId() <= readUpToId);
+    }
+}
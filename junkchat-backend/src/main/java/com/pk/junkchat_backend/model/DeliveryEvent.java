@@ -0,0 +1,62 @@
+package com.pk.junkchat_backend.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+// Envelope for everything pushed to a user on their /user/queue/events subscription
+public class DeliveryEvent {
+    public static final String MESSAGE = "message";
+    public static final String MESSAGE_FAILED = "message-failed";
+    public static final String EXPIRED = "expired";
+    public static final String CONTACT = "contact";
+    public static final String CONTACT_REMOVED = "contact-removed";
+    public static final String ACK = "ack";
+    public static final String PRESENCE = "presence";
+    public static final String TYPING = "typing";
+
+    // STOMP header marking frames a slow client may miss without harm (typing, presence); dropped first under backpressure
+    public static final String EPHEMERAL_HEADER = "x-ephemeral";
+
+    private String type;
+    private Object payload;
+    @JsonIgnore
+    private boolean ephemeral;
+
+    public DeliveryEvent() {
+    }
+
+    public DeliveryEvent(String type, Object payload) {
+        this.type = type;
+        this.payload = payload;
+    }
+
+    public DeliveryEvent(String type, Object payload, boolean ephemeral) {
+        this.type = type;
+        this.payload = payload;
+        this.ephemeral = ephemeral;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Object getPayload() {
+        return payload;
+    }
+
+    public void setPayload(Object payload) {
+        this.payload = payload;
+    }
+
+    @JsonIgnore
+    public boolean isEphemeral() {
+        return ephemeral;
+    }
+
+    public void setEphemeral(boolean ephemeral) {
+        this.ephemeral = ephemeral;
+    }
+}
@@ -1,34 +1,62 @@
 package com.pk.junkchat_backend.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "message")
 public class Message {
+    // Ids come from message_seq (INCREMENT BY this): one nextval hands out a block of ids, and inserts can be batched
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "message_seq")
+    @SequenceGenerator(name = "message_seq", sequenceName = "message_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
-    @ManyToOne
+    // Lazy: history pages and deliveries only need the ids below, so loading a page never joins users
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "sender_id", nullable = false)
     private User sender;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "recipient_id", nullable = false)
     private User recipient;
 
+    // Same columns as the associations, read-only
+    @Column(name = "sender_id", insertable = false, updatable = false)
+    private Long senderId;
+
+    @Column(name = "recipient_id", insertable = false, updatable = false)
+    private Long recipientId;
+
     @Column(nullable = false)
     private String content;
 
     @Column(name = "sent_at", nullable = false)
     private LocalDateTime sentAt;
 
-    @Column(name = "hidden_for_user_ids")
-    private Long[] hiddenForUserIds;
-
-    @Column(name = "read_by_user_ids")
-    private Long[] readByUserIds;
+    // Canonical conversation key: (least, greatest) of the two participant ids.
+    // Nullable only so ddl-auto can add the columns to existing tables; DatabaseMigrationRunner backfills them.
+    @Column(name = "user_low_id")
+    private Long userLowId;
+
+    @Column(name = "user_high_id")
+    private Long userHighId;
+
+    // Whether the recipient has read it, from the recipient's read watermark; set on history pages only
+    @Transient
+    private Boolean read;
+
+    @PrePersist
+    @PreUpdate
+    public void assignConversationKey() {
+        if (senderId != null && recipientId != null) {
+            userLowId = Math.min(senderId, recipientId);
+            userHighId = Math.max(senderId, recipientId);
+        }
+    }
 
     // Getters and setters
     public Long getId() {
@@ -39,20 +67,32 @@ public class Message {
         this.id = id;
     }
 
+    @JsonIgnore
     public User getSender() {
         return sender;
     }
 
     public void setSender(User sender) {
         this.sender = sender;
+        this.senderId = sender != null ? sender.getId() : null;
     }
 
+    @JsonIgnore
     public User getRecipient() {
         return recipient;
     }
 
     public void setRecipient(User recipient) {
         this.recipient = recipient;
+        this.recipientId = recipient != null ? recipient.getId() : null;
+    }
+
+    public Long getSenderId() {
+        return senderId;
+    }
+
+    public Long getRecipientId() {
+        return recipientId;
     }
 
     public String getContent() {
@@ -71,19 +111,29 @@ public class Message {
         this.sentAt = sentAt;
     }
 
-    public Long[] getHiddenForUserIds() {
-        return hiddenForUserIds;
+    @JsonIgnore
+    public Long getUserLowId() {
+        return userLowId;
+    }
+
+    public void setUserLowId(Long userLowId) {
+        this.userLowId = userLowId;
+    }
+
+    @JsonIgnore
+    public Long getUserHighId() {
+        return userHighId;
     }
 
-    public void setHiddenForUserIds(Long[] hiddenForUserIds) {
-        this.hiddenForUserIds = hiddenForUserIds;
+    public void setUserHighId(Long userHighId) {
+        this.userHighId = userHighId;
     }
 
-    public Long[] getReadByUserIds() {
-        return readByUserIds;
+    public Boolean getRead() {
+        return read;
     }
 
-    public void setReadByUserIds(Long[] readByUserIds) {
-        this.readByUserIds = readByUserIds;
+    public void setRead(Boolean read) {
+        this.read = read;
     }
 }
\ No newline at end of file
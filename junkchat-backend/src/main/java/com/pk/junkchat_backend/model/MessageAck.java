@@ -0,0 +1,64 @@
+package com.pk.junkchat_backend.model;
+
+import java.time.LocalDateTime;
+
+// Payload of an "ack" delivery event answering a STOMP /app/chat.* request; clientId echoes the client's own id
+public class MessageAck {
+    private String clientId;
+    private Long messageId;
+    private LocalDateTime sentAt;
+    private String error;
+
+    public static MessageAck sent(String clientId, Message message) {
+        MessageAck ack = new MessageAck();
+        ack.clientId = clientId;
+        ack.messageId = message.getId();
+        ack.sentAt = message.getSentAt();
+        return ack;
+    }
+
+    public static MessageAck done(String clientId) {
+        MessageAck ack = new MessageAck();
+        ack.clientId = clientId;
+        return ack;
+    }
+
+    public static MessageAck failed(String clientId, String error) {
+        MessageAck ack = new MessageAck();
+        ack.clientId = clientId;
+        ack.error = error;
+        return ack;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(Long messageId) {
+        this.messageId = messageId;
+    }
+
+    public LocalDateTime getSentAt() {
+        return sentAt;
+    }
+
+    public void setSentAt(LocalDateTime sentAt) {
+        this.sentAt = sentAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,48 @@
+package com.pk.junkchat_backend.model;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+// Keyset position in a conversation, serialized as "<sentAt>_<id>"
+public class MessageCursor {
+    private final LocalDateTime sentAt;
+    private final Long id;
+
+    public MessageCursor(LocalDateTime sentAt, Long id) {
+        this.sentAt = sentAt;
+        this.id = id;
+    }
+
+    public static MessageCursor of(Message message) {
+        return new MessageCursor(message.getSentAt(), message.getId());
+    }
+
+    public static MessageCursor parse(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        int separator = value.lastIndexOf('_');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + value);
+        }
+        try {
+            return new MessageCursor(LocalDateTime.parse(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+        } catch (DateTimeParseException | NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid cursor: " + value);
+        }
+    }
+
+    public LocalDateTime getSentAt() {
+        return sentAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return sentAt + "_" + id;
+    }
+}
@@ -0,0 +1,30 @@
+package com.pk.junkchat_backend.model;
+
+import java.time.LocalDateTime;
+
+// Payload of an "expired" delivery event: messages with contactId sent at or before expiredUpTo are gone
+public class MessageExpiryEvent {
+    private Long contactId;
+    private LocalDateTime expiredUpTo;
+
+    public MessageExpiryEvent(Long contactId, LocalDateTime expiredUpTo) {
+        this.contactId = contactId;
+        this.expiredUpTo = expiredUpTo;
+    }
+
+    public Long getContactId() {
+        return contactId;
+    }
+
+    public void setContactId(Long contactId) {
+        this.contactId = contactId;
+    }
+
+    public LocalDateTime getExpiredUpTo() {
+        return expiredUpTo;
+    }
+
+    public void setExpiredUpTo(LocalDateTime expiredUpTo) {
+        this.expiredUpTo = expiredUpTo;
+    }
+}
@@ -0,0 +1,82 @@
+package com.pk.junkchat_backend.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.LocalDateTime;
+
+// What clients get for a message, over REST and in "message" delivery events: participants by id only.
+// read is set on history pages and left out of the JSON elsewhere.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MessageView {
+    private Long id;
+    private Long senderId;
+    private Long recipientId;
+    private String content;
+    private LocalDateTime sentAt;
+    private Boolean read;
+
+    public MessageView() {
+    }
+
+    public MessageView(Long id, Long senderId, Long recipientId, String content, LocalDateTime sentAt, Boolean read) {
+        this.id = id;
+        this.senderId = senderId;
+        this.recipientId = recipientId;
+        this.content = content;
+        this.sentAt = sentAt;
+        this.read = read;
+    }
+
+    public static MessageView of(Message message) {
+        return new MessageView(message.getId(), message.getSenderId(), message.getRecipientId(),
+                message.getContent(), message.getSentAt(), message.getRead());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getSenderId() {
+        return senderId;
+    }
+
+    public void setSenderId(Long senderId) {
+        this.senderId = senderId;
+    }
+
+    public Long getRecipientId() {
+        return recipientId;
+    }
+
+    public void setRecipientId(Long recipientId) {
+        this.recipientId = recipientId;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public LocalDateTime getSentAt() {
+        return sentAt;
+    }
+
+    public void setSentAt(LocalDateTime sentAt) {
+        this.sentAt = sentAt;
+    }
+
+    public Boolean getRead() {
+        return read;
+    }
+
+    public void setRead(Boolean read) {
+        this.read = read;
+    }
+}
@@ -0,0 +1,44 @@
+package com.pk.junkchat_backend.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// One user's presence in a "presence" delivery event; lastSeen (epoch millis) is set when they went offline
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PresenceUpdate {
+    private Long userId;
+    private boolean online;
+    private Long lastSeen;
+
+    public PresenceUpdate() {
+    }
+
+    public PresenceUpdate(Long userId, boolean online, Long lastSeen) {
+        this.userId = userId;
+        this.online = online;
+        this.lastSeen = lastSeen;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public boolean isOnline() {
+        return online;
+    }
+
+    public void setOnline(boolean online) {
+        this.online = online;
+    }
+
+    public Long getLastSeen() {
+        return lastSeen;
+    }
+
+    public void setLastSeen(Long lastSeen) {
+        this.lastSeen = lastSeen;
+    }
+}
@@ -0,0 +1,28 @@
+package com.pk.junkchat_backend.model;
+
+// Payload of a "typing" delivery event: contactId started (typing=true) or stopped typing to the receiver
+public class TypingEvent {
+    private Long contactId;
+    private boolean typing;
+
+    public TypingEvent(Long contactId, boolean typing) {
+        this.contactId = contactId;
+        this.typing = typing;
+    }
+
+    public Long getContactId() {
+        return contactId;
+    }
+
+    public void setContactId(Long contactId) {
+        this.contactId = contactId;
+    }
+
+    public boolean isTyping() {
+        return typing;
+    }
+
+    public void setTyping(boolean typing) {
+        this.typing = typing;
+    }
+}
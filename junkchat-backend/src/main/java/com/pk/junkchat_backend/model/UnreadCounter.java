@@ -0,0 +1,56 @@
+package com.pk.junkchat_backend.model;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(name = "unread_counter",
+        uniqueConstraints = @UniqueConstraint(name = "uk_unread_counter_user_contact", columnNames = {"user_id", "contact_id"}))
+public class UnreadCounter {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // The user who has not read the messages yet
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    // The contact who sent them
+    @Column(name = "contact_id", nullable = false)
+    private Long contactId;
+
+    @Column(name = "unread_count", nullable = false)
+    private int unreadCount;
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getContactId() {
+        return contactId;
+    }
+
+    public void setContactId(Long contactId) {
+        this.contactId = contactId;
+    }
+
+    public int getUnreadCount() {
+        return unreadCount;
+    }
+
+    public void setUnreadCount(int unreadCount) {
+        this.unreadCount = unreadCount;
+    }
+}
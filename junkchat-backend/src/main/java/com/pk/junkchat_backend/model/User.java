@@ -1,7 +1,7 @@
 package com.pk.junkchat_backend.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
-import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "users")
@@ -16,21 +16,15 @@ public class User {
     @Column(unique = true, nullable = false)
     private String email;
 
+    // Accepted on register/update, never written out
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     @Column(nullable = false)
     private String password;
 
+    // URL of the avatar in the avatar store, e.g. /api/avatars/{sha256}.png
     @Column(name = "profile_pic", columnDefinition = "TEXT")
     private String profilePic;
 
-    @Transient
-    private String lastMessageContent;
-
-    @Transient
-    private LocalDateTime lastMessageTime;
-
-    @Transient
-    private int unreadCount;
-
     // Getters and setters
     public Long getId() {
         return id;
@@ -72,27 +66,15 @@ public class User {
         this.profilePic = profilePic;
     }
 
-    public String getLastMessageContent() {
-        return lastMessageContent;
-    }
-
-    public void setLastMessageContent(String lastMessageContent) {
-        this.lastMessageContent = lastMessageContent;
-    }
-
-    public LocalDateTime getLastMessageTime() {
-        return lastMessageTime;
-    }
-
-    public void setLastMessageTime(LocalDateTime lastMessageTime) {
-        this.lastMessageTime = lastMessageTime;
-    }
-
-    public int getUnreadCount() {
-        return unreadCount;
+    // Small rendition for contact lists; stored avatars have one next to them, anything else is used as is
+    public String getProfileThumbnail() {
+        return thumbnailOf(profilePic);
     }
 
-    public void setUnreadCount(int unreadCount) {
-        this.unreadCount = unreadCount;
+    public static String thumbnailOf(String profilePic) {
+        if (profilePic == null || !profilePic.startsWith("/api/avatars/")) {
+            return profilePic;
+        }
+        return profilePic.substring(0, profilePic.lastIndexOf('.')) + ".thumb.png";
     }
-}
\ No newline at end of file
+}
@@ -1,10 +1,11 @@
 package com.pk.junkchat_backend.repository;
 
 import com.pk.junkchat_backend.model.Contact;
-import com.pk.junkchat_backend.model.User;
+import com.pk.junkchat_backend.model.ContactSummary;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -15,14 +16,33 @@ import java.util.Optional;
 public interface ContactRepository extends JpaRepository<Contact, Long> {
     boolean existsByUserIdAndContactId(Long userId, Long contactId);
 
-    List<Contact> findByUser(User user);
-
     @Query("SELECT c.contact.id FROM Contact c WHERE c.user.id = :userId")
     List<Long> findContactIdsByUserId(Long userId);
 
+    // The reverse direction: everyone who has contactId in their contact list
+    @Query("SELECT c.user.id FROM Contact c WHERE c.contact.id = :contactId")
+    List<Long> findUserIdsByContactId(@Param("contactId") Long contactId);
+
+    // The whole contact list of userId in one query: profile, last message and unread count per contact
+    @Query("SELECT new com.pk.junkchat_backend.model.ContactSummary(u.id, u.username, u.profilePic, s.lastMessageContent, s.lastMessageTime, COALESCE(uc.unreadCount, 0)) " +
+            "FROM Contact c JOIN c.contact u " +
+            "LEFT JOIN ConversationSummary s ON s.userId = :userId AND s.contactId = u.id " +
+            "LEFT JOIN UnreadCounter uc ON uc.userId = :userId AND uc.contactId = u.id " +
+            "WHERE c.user.id = :userId")
+    List<ContactSummary> findContactSummaries(@Param("userId") Long userId);
+
     @Query("SELECT c FROM Contact c WHERE c.user.id = :userId AND c.contact.id = :contactId")
     Optional<Contact> findByUserIdAndContactId(Long userId, Long contactId);
 
+    // Adds userId <-> contactId in both directions for every contact id, skipping pairs that already exist;
+    // returns the (user_id, contact_id) pairs actually inserted
+    @Transactional
+    @Query(value = "INSERT INTO contact (user_id, contact_id) " +
+            "SELECT p.user_id, p.contact_id FROM unnest(CAST(:contactIds AS bigint[])) AS c(id) " +
+            "CROSS JOIN LATERAL (VALUES (:userId, c.id), (c.id, :userId)) AS p(user_id, contact_id) " +
+            "ON CONFLICT (user_id, contact_id) DO NOTHING RETURNING user_id, contact_id", nativeQuery = true)
+    List<Object[]> insertMissingContacts(@Param("userId") Long userId, @Param("contactIds") Long[] contactIds);
+
     @Modifying
     @Transactional
     @Query("DELETE FROM Contact c WHERE c.user.id = :userId AND c.contact.id = :contactId")
@@ -0,0 +1,68 @@
+package com.pk.junkchat_backend.repository;
+
+import com.pk.junkchat_backend.model.ConversationSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ConversationSummaryRepository extends JpaRepository<ConversationSummary, Long> {
+    List<ConversationSummary> findByUserId(Long userId);
+
+    Optional<ConversationSummary> findByUserIdAndContactId(Long userId, Long contactId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO conversation_summary (user_id, contact_id, last_message_id, last_sender_id, last_message_content, last_message_time) " +
+            "VALUES (:userId, :contactId, :messageId, :senderId, :content, :sentAt) " +
+            "ON CONFLICT (user_id, contact_id) DO UPDATE SET last_message_id = EXCLUDED.last_message_id, last_sender_id = EXCLUDED.last_sender_id, " +
+            "last_message_content = EXCLUDED.last_message_content, last_message_time = EXCLUDED.last_message_time " +
+            "WHERE conversation_summary.last_message_time IS NULL OR conversation_summary.last_message_time <= EXCLUDED.last_message_time", nativeQuery = true)
+    void upsertLastMessage(@Param("userId") Long userId, @Param("contactId") Long contactId, @Param("messageId") Long messageId,
+                           @Param("senderId") Long senderId, @Param("content") String content, @Param("sentAt") LocalDateTime sentAt);
+
+    // Both sides of every conversation touched by a broadcast; ids[i] is the message to recipientIds[i]
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO conversation_summary (user_id, contact_id, last_message_id, last_sender_id, last_message_content, last_message_time) " +
+            "SELECT p.user_id, p.contact_id, m.id, :senderId, :content, :sentAt " +
+            "FROM unnest(CAST(:ids AS bigint[]), CAST(:recipientIds AS bigint[])) AS m(id, recipient_id) " +
+            "CROSS JOIN LATERAL (VALUES (:senderId, m.recipient_id), (m.recipient_id, :senderId)) AS p(user_id, contact_id) " +
+            "ON CONFLICT (user_id, contact_id) DO UPDATE SET last_message_id = EXCLUDED.last_message_id, last_sender_id = EXCLUDED.last_sender_id, " +
+            "last_message_content = EXCLUDED.last_message_content, last_message_time = EXCLUDED.last_message_time " +
+            "WHERE conversation_summary.last_message_time IS NULL OR conversation_summary.last_message_time <= EXCLUDED.last_message_time", nativeQuery = true)
+    void upsertBroadcast(@Param("senderId") Long senderId, @Param("ids") Long[] ids, @Param("recipientIds") Long[] recipientIds,
+                         @Param("content") String content, @Param("sentAt") LocalDateTime sentAt);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM conversation_summary WHERE user_id = :userId AND contact_id = :contactId", nativeQuery = true)
+    void deleteByUserIdAndContactId(@Param("userId") Long userId, @Param("contactId") Long contactId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM conversation_summary WHERE last_message_time < :cutoff", nativeQuery = true)
+    int deleteOlderThan(@Param("cutoff") LocalDateTime cutoff);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM conversation_summary WHERE ((user_id = :userId1 AND contact_id = :userId2) OR (user_id = :userId2 AND contact_id = :userId1)) AND last_message_time <= :cutoff", nativeQuery = true)
+    int deleteExpiredForConversation(@Param("userId1") Long userId1, @Param("userId2") Long userId2, @Param("cutoff") LocalDateTime cutoff);
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO conversation_summary (user_id, contact_id, last_message_id, last_sender_id, last_message_content, last_message_time) " +
+            "SELECT DISTINCT ON (p.user_id, p.contact_id) p.user_id, p.contact_id, m.id, m.sender_id, m.content, m.sent_at " +
+            "FROM message m CROSS JOIN LATERAL (VALUES (m.sender_id, m.recipient_id), (m.recipient_id, m.sender_id)) AS p(user_id, contact_id) " +
+            "WHERE m.sent_at > COALESCE((SELECT w.cleared_before FROM conversation_watermark w WHERE w.user_id = p.user_id AND w.contact_id = p.contact_id), CAST('-infinity' AS timestamp)) " +
+            "ORDER BY p.user_id, p.contact_id, m.sent_at DESC " +
+            "ON CONFLICT (user_id, contact_id) DO NOTHING", nativeQuery = true)
+    int backfillFromMessages();
+}
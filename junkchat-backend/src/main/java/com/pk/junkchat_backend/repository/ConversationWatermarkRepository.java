@@ -0,0 +1,40 @@
+package com.pk.junkchat_backend.repository;
+
+import com.pk.junkchat_backend.model.ConversationWatermark;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ConversationWatermarkRepository extends JpaRepository<ConversationWatermark, Long> {
+    Optional<ConversationWatermark> findByUserIdAndContactId(Long userId, Long contactId);
+
+    // Both sides of a conversation in one query
+    @Query("SELECT w FROM ConversationWatermark w WHERE (w.userId = :userId1 AND w.contactId = :userId2) OR (w.userId = :userId2 AND w.contactId = :userId1)")
+    List<ConversationWatermark> findForConversation(@Param("userId1") Long userId1, @Param("userId2") Long userId2);
+
+    // Moves userId's read watermark to the newest message of the conversation; one row, never backwards
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO conversation_watermark (user_id, contact_id, read_up_to, read_up_to_id) " +
+            "SELECT :userId, :contactId, m.sent_at, m.id FROM message m " +
+            "WHERE m.user_low_id = LEAST(:userId, :contactId) AND m.user_high_id = GREATEST(:userId, :contactId) " +
+            "ORDER BY m.sent_at DESC, m.id DESC LIMIT 1 " +
+            "ON CONFLICT (user_id, contact_id) DO UPDATE SET read_up_to = EXCLUDED.read_up_to, read_up_to_id = EXCLUDED.read_up_to_id " +
+            "WHERE conversation_watermark.read_up_to IS NULL " +
+            "OR (conversation_watermark.read_up_to, conversation_watermark.read_up_to_id) < (EXCLUDED.read_up_to, EXCLUDED.read_up_to_id)", nativeQuery = true)
+    int upsertReadUpToLatest(@Param("userId") Long userId, @Param("contactId") Long contactId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO conversation_watermark (user_id, contact_id, cleared_before) VALUES (:userId, :contactId, :clearedBefore) " +
+            "ON CONFLICT (user_id, contact_id) DO UPDATE SET cleared_before = GREATEST(conversation_watermark.cleared_before, EXCLUDED.cleared_before)", nativeQuery = true)
+    void upsertClearedBefore(@Param("userId") Long userId, @Param("contactId") Long contactId, @Param("clearedBefore") LocalDateTime clearedBefore);
+}
@@ -8,28 +8,29 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
-    @Query(value = "SELECT * FROM message WHERE ((sender_id = :userId1 AND recipient_id = :userId2) OR (sender_id = :userId2 AND recipient_id = :userId1)) AND (hidden_for_user_ids IS NULL OR NOT :userId1 = ANY(hidden_for_user_ids)) ORDER BY sent_at DESC LIMIT 1", nativeQuery = true)
-    Message findLatestMessageBetweenUsers(@Param("userId1") Long userId1, @Param("userId2") Long userId2);
+    @Query(value = "SELECT * FROM message WHERE user_low_id = LEAST(:userId1, :userId2) AND user_high_id = GREATEST(:userId1, :userId2) AND sent_at > COALESCE((SELECT w.cleared_before FROM conversation_watermark w WHERE w.user_id = :userId1 AND w.contact_id = :userId2), CAST('-infinity' AS timestamp)) AND sent_at > :expiredBefore ORDER BY sent_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Message> findLatestMessagesBetweenUsers(@Param("userId1") Long userId1, @Param("userId2") Long userId2,
+                                                 @Param("expiredBefore") LocalDateTime expiredBefore, @Param("limit") int limit);
 
-    @Query(value = "SELECT * FROM message WHERE ((sender_id = :userId1 AND recipient_id = :userId2) OR (sender_id = :userId2 AND recipient_id = :userId1)) AND (hidden_for_user_ids IS NULL OR NOT :userId1 = ANY(hidden_for_user_ids)) ORDER BY sent_at ASC", nativeQuery = true)
-    List<Message> findMessagesBetweenUsers(@Param("userId1") Long userId1, @Param("userId2") Long userId2);
+    @Query(value = "SELECT * FROM message WHERE user_low_id = LEAST(:userId1, :userId2) AND user_high_id = GREATEST(:userId1, :userId2) AND sent_at > COALESCE((SELECT w.cleared_before FROM conversation_watermark w WHERE w.user_id = :userId1 AND w.contact_id = :userId2), CAST('-infinity' AS timestamp)) AND sent_at > :expiredBefore AND (sent_at, id) < (:sentAt, :id) ORDER BY sent_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Message> findMessagesBetweenUsersBefore(@Param("userId1") Long userId1, @Param("userId2") Long userId2,
+                                                 @Param("expiredBefore") LocalDateTime expiredBefore, @Param("sentAt") LocalDateTime sentAt, @Param("id") Long id, @Param("limit") int limit);
 
-    @Modifying
-    @Transactional
-    @Query(value = "UPDATE message SET hidden_for_user_ids = COALESCE(hidden_for_user_ids, '{}') || ARRAY[:userId] WHERE ((sender_id = :userId AND recipient_id = :contactId) OR (sender_id = :contactId AND recipient_id = :userId)) AND NOT :userId = ANY(COALESCE(hidden_for_user_ids, '{}'))", nativeQuery = true)
-    void hideMessagesForUser(@Param("userId") Long userId, @Param("contactId") Long contactId);
-
-    @Modifying
-    @Transactional
-    @Query(value = "UPDATE message SET read_by_user_ids = COALESCE(read_by_user_ids, '{}') || ARRAY[:userId] WHERE ((sender_id = :contactId AND recipient_id = :userId) OR (sender_id = :userId AND recipient_id = :contactId)) AND NOT :userId = ANY(COALESCE(read_by_user_ids, '{}'))", nativeQuery = true)
-    void markMessagesAsReadForUser(@Param("userId") Long userId, @Param("contactId") Long contactId);
+    @Query(value = "SELECT * FROM message WHERE user_low_id = LEAST(:userId1, :userId2) AND user_high_id = GREATEST(:userId1, :userId2) AND sent_at > COALESCE((SELECT w.cleared_before FROM conversation_watermark w WHERE w.user_id = :userId1 AND w.contact_id = :userId2), CAST('-infinity' AS timestamp)) AND sent_at > :expiredBefore AND (sent_at, id) > (:sentAt, :id) ORDER BY sent_at ASC, id ASC LIMIT :limit", nativeQuery = true)
+    List<Message> findMessagesBetweenUsersAfter(@Param("userId1") Long userId1, @Param("userId2") Long userId2,
+                                                @Param("expiredBefore") LocalDateTime expiredBefore, @Param("sentAt") LocalDateTime sentAt, @Param("id") Long id, @Param("limit") int limit);
 
+    // One statement for a whole broadcast: ids[i] is the message to recipientIds[i]
     @Modifying
     @Transactional
-    @Query(value = "DELETE FROM message WHERE sent_at < CURRENT_TIMESTAMP - INTERVAL '24 hours'", nativeQuery = true)
-    int deleteMessagesOlderThan24Hours();
+    @Query(value = "INSERT INTO message (id, sender_id, recipient_id, content, sent_at, user_low_id, user_high_id) " +
+            "SELECT m.id, :senderId, m.recipient_id, :content, :sentAt, LEAST(:senderId, m.recipient_id), GREATEST(:senderId, m.recipient_id) " +
+            "FROM unnest(CAST(:ids AS bigint[]), CAST(:recipientIds AS bigint[])) AS m(id, recipient_id)", nativeQuery = true)
+    int insertBroadcast(@Param("senderId") Long senderId, @Param("content") String content, @Param("sentAt") LocalDateTime sentAt,
+                        @Param("ids") Long[] ids, @Param("recipientIds") Long[] recipientIds);
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.pk.junkchat_backend.repository;
+
+import com.pk.junkchat_backend.model.UnreadCounter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UnreadCounterRepository extends JpaRepository<UnreadCounter, Long> {
+    @Query("SELECT u.unreadCount FROM UnreadCounter u WHERE u.userId = :userId AND u.contactId = :contactId")
+    Integer findUnreadCount(@Param("userId") Long userId, @Param("contactId") Long contactId);
+
+    // Returns the count after the increment
+    @Transactional
+    @Query(value = "INSERT INTO unread_counter (user_id, contact_id, unread_count) VALUES (:userId, :contactId, 1) ON CONFLICT (user_id, contact_id) DO UPDATE SET unread_count = unread_counter.unread_count + 1 RETURNING unread_count", nativeQuery = true)
+    int incrementUnreadCount(@Param("userId") Long userId, @Param("contactId") Long contactId);
+
+    // Returns (user_id, unread_count) after the increment for every user
+    @Transactional
+    @Query(value = "INSERT INTO unread_counter (user_id, contact_id, unread_count) SELECT u.id, :contactId, 1 FROM unnest(CAST(:userIds AS bigint[])) AS u(id) ON CONFLICT (user_id, contact_id) DO UPDATE SET unread_count = unread_counter.unread_count + 1 RETURNING user_id, unread_count", nativeQuery = true)
+    List<Object[]> incrementUnreadCounts(@Param("userIds") Long[] userIds, @Param("contactId") Long contactId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE unread_counter SET unread_count = 0 WHERE user_id = :userId AND contact_id = :contactId AND unread_count <> 0", nativeQuery = true)
+    void resetUnreadCount(@Param("userId") Long userId, @Param("contactId") Long contactId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE unread_counter uc SET unread_count = (SELECT COUNT(*) FROM message m WHERE m.user_low_id = LEAST(uc.user_id, uc.contact_id) AND m.user_high_id = GREATEST(uc.user_id, uc.contact_id) AND m.sender_id = uc.contact_id AND NOT EXISTS (SELECT 1 FROM conversation_watermark r WHERE r.user_id = uc.user_id AND r.contact_id = uc.contact_id AND (m.sent_at, m.id) <= (r.read_up_to, r.read_up_to_id)) AND m.sent_at > COALESCE((SELECT w.cleared_before FROM conversation_watermark w WHERE w.user_id = uc.user_id AND w.contact_id = uc.contact_id), CAST('-infinity' AS timestamp)) AND m.sent_at > :cutoff) WHERE uc.unread_count > 0", nativeQuery = true)
+    int recalculateUnreadCounts(@Param("cutoff") LocalDateTime cutoff);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE unread_counter uc SET unread_count = (SELECT COUNT(*) FROM message m WHERE m.user_low_id = LEAST(uc.user_id, uc.contact_id) AND m.user_high_id = GREATEST(uc.user_id, uc.contact_id) AND m.sender_id = uc.contact_id AND NOT EXISTS (SELECT 1 FROM conversation_watermark r WHERE r.user_id = uc.user_id AND r.contact_id = uc.contact_id AND (m.sent_at, m.id) <= (r.read_up_to, r.read_up_to_id)) AND m.sent_at > COALESCE((SELECT w.cleared_before FROM conversation_watermark w WHERE w.user_id = uc.user_id AND w.contact_id = uc.contact_id), CAST('-infinity' AS timestamp)) AND m.sent_at > :cutoff) WHERE uc.unread_count > 0 AND ((uc.user_id = :userId1 AND uc.contact_id = :userId2) OR (uc.user_id = :userId2 AND uc.contact_id = :userId1))", nativeQuery = true)
+    int recalculateUnreadCountsForConversation(@Param("userId1") Long userId1, @Param("userId2") Long userId2, @Param("cutoff") LocalDateTime cutoff);
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO unread_counter (user_id, contact_id, unread_count) SELECT m.recipient_id, m.sender_id, COUNT(*) FROM message m WHERE NOT EXISTS (SELECT 1 FROM conversation_watermark r WHERE r.user_id = m.recipient_id AND r.contact_id = m.sender_id AND (m.sent_at, m.id) <= (r.read_up_to, r.read_up_to_id)) AND m.sent_at > COALESCE((SELECT w.cleared_before FROM conversation_watermark w WHERE w.user_id = m.recipient_id AND w.contact_id = m.sender_id), CAST('-infinity' AS timestamp)) GROUP BY m.recipient_id, m.sender_id ON CONFLICT (user_id, contact_id) DO NOTHING", nativeQuery = true)
+    int backfillFromMessages();
+}
@@ -1,9 +1,12 @@
 package com.pk.junkchat_backend.repository;
 
+import com.pk.junkchat_backend.model.ContactSummary;
 import com.pk.junkchat_backend.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,7 +16,18 @@ public interface UserRepository extends JpaRepository<User,Long> {
     Optional<User> findByEmail(String email);
     User findByUsernameIgnoreCaseOrEmailIgnoreCase(String username, String email);
 
-    @Query("SELECT u FROM User u WHERE LOWER(u.username) LIKE LOWER(CONCAT('%', :query, '%')) AND u.id != :currentUserId")
-    List<User> findByUsernameContainingIgnoreCaseAndIdNot(String query, Long currentUserId);
+    @Query("SELECT new com.pk.junkchat_backend.model.ContactSummary(u.id, u.username, u.profilePic, s.lastMessageContent, s.lastMessageTime, COALESCE(uc.unreadCount, 0)) " +
+            "FROM User u " +
+            "LEFT JOIN ConversationSummary s ON s.userId = :currentUserId AND s.contactId = u.id " +
+            "LEFT JOIN UnreadCounter uc ON uc.userId = :currentUserId AND uc.contactId = u.id " +
+            "WHERE u.id IN :ids")
+    List<ContactSummary> findContactSummaries(@Param("ids") Collection<Long> ids, @Param("currentUserId") Long currentUserId);
+
+    // Fallback for UsernameSearchIndex before it is loaded; served by the idx_users_username_trgm GIN index
+    @Query(value = "SELECT id FROM users WHERE LOWER(username) LIKE :pattern ESCAPE '\\' AND id <> :currentUserId " +
+            "ORDER BY LOWER(username) = :query DESC, LOWER(username) LIKE :prefix ESCAPE '\\' DESC, LENGTH(username), LOWER(username) " +
+            "LIMIT :limit OFFSET :offset", nativeQuery = true)
+    List<Long> searchIdsByUsername(@Param("query") String query, @Param("pattern") String pattern, @Param("prefix") String prefix,
+                                   @Param("currentUserId") Long currentUserId, @Param("offset") int offset, @Param("limit") int limit);
 }
 
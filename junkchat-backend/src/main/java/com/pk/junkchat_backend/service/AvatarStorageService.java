@@ -0,0 +1,243 @@
+package com.pk.junkchat_backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed avatar store on local disk. An image is written once under the SHA-256 of its bytes
+ * ({dir}/{first two hex digits}/{hash}.{ext}) and users only carry its URL, so the same picture is stored once
+ * and a URL never changes meaning, which lets it be cached forever. A small PNG thumbnail ({hash}.thumb.png)
+ * is rendered in the background, from a subsampled decode; images over max-pixels get none.
+ */
+@Service
+public class AvatarStorageService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarStorageService.class);
+
+    public static final String URL_PREFIX = "/api/avatars/";
+    public static final String THUMBNAIL_SUFFIX = ".thumb.png";
+
+    private static final Pattern DATA_URL = Pattern.compile("^data:(image/[a-z+.-]+);base64,(.*)$", Pattern.DOTALL);
+    private static final Pattern FILE_NAME = Pattern.compile("^([0-9a-f]{64})(\\.thumb\\.png|\\.png|\\.jpg|\\.gif|\\.webp)$");
+    private static final Map<String, String> EXTENSIONS = Map.of(
+            "image/png", "png", "image/jpeg", "jpg", "image/jpg", "jpg", "image/gif", "gif", "image/webp", "webp");
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            "png", "image/png", "jpg", "image/jpeg", "gif", "image/gif", "webp", "image/webp");
+
+    @Value("${junkchat.avatars.dir:./data/avatars}")
+    private String directory;
+
+    @Value("${junkchat.avatars.thumbnail-size:128}")
+    private int thumbnailSize;
+
+    @Value("${junkchat.avatars.thumbnail-threads:1}")
+    private int thumbnailThreads;
+
+    @Value("${junkchat.avatars.max-pixels:40000000}")
+    private long maxPixels;
+
+    private Path root;
+    private ExecutorService thumbnailExecutor;
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(directory).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        thumbnailExecutor = Executors.newFixedThreadPool(Math.max(1, thumbnailThreads), runnable -> {
+            Thread thread = new Thread(runnable, "avatar-thumbnails");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Avatar store at {}", root);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        thumbnailExecutor.shutdownNow();
+    }
+
+    public static boolean isDataUrl(String value) {
+        return value != null && value.startsWith("data:");
+    }
+
+    public static boolean isAvatarUrl(String value) {
+        return value != null && value.startsWith(URL_PREFIX);
+    }
+
+    /**
+     * Stores a "data:image/...;base64," URL and returns the avatar's URL. Storing the same image twice is a no-op.
+     */
+    public String store(String dataUrl) throws IOException {
+        Matcher matcher = DATA_URL.matcher(dataUrl);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a base64 image data URL");
+        }
+        String extension = EXTENSIONS.get(matcher.group(1));
+        if (extension == null) {
+            throw new IllegalArgumentException("Unsupported image type " + matcher.group(1));
+        }
+        byte[] bytes = Base64.getMimeDecoder().decode(matcher.group(2));
+        String hash = sha256(bytes);
+        String name = hash + "." + extension;
+        Path target = pathFor(hash, name);
+        if (!Files.exists(target)) {
+            Files.createDirectories(target.getParent());
+            Path temp = Files.createTempFile(target.getParent(), hash, ".tmp");
+            try {
+                Files.write(temp, bytes);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            logger.debug("Stored avatar {} ({} bytes)", name, bytes.length);
+        }
+        scheduleThumbnail(hash, target);
+        return URL_PREFIX + name;
+    }
+
+    /**
+     * Resolves a file name from an avatar URL to a readable file, or null if it is not a valid name or does not
+     * exist (yet). A thumbnail that has not been rendered resolves to null; callers fall back to the original.
+     */
+    public Path resolve(String name) {
+        Matcher matcher = FILE_NAME.matcher(name);
+        if (!matcher.matches()) {
+            return null;
+        }
+        Path path = pathFor(matcher.group(1), name);
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    // The original image behind a thumbnail name, whatever its extension
+    public Path resolveOriginal(String thumbnailName) {
+        if (!thumbnailName.endsWith(THUMBNAIL_SUFFIX)) {
+            return null;
+        }
+        String hash = thumbnailName.substring(0, thumbnailName.length() - THUMBNAIL_SUFFIX.length());
+        for (String extension : CONTENT_TYPES.keySet()) {
+            Path original = resolve(hash + "." + extension);
+            if (original != null) {
+                return original;
+            }
+        }
+        return null;
+    }
+
+    public String contentType(Path path) {
+        String name = path.getFileName().toString();
+        return CONTENT_TYPES.getOrDefault(name.substring(name.lastIndexOf('.') + 1), "application/octet-stream");
+    }
+
+    private void scheduleThumbnail(String hash, Path original) {
+        Path thumbnail = pathFor(hash, hash + THUMBNAIL_SUFFIX);
+        if (Files.exists(thumbnail)) {
+            return;
+        }
+        try {
+            thumbnailExecutor.execute(() -> renderThumbnail(original, thumbnail));
+        } catch (RejectedExecutionException ex) {
+            logger.warn("Skipped thumbnail for {}: {}", original.getFileName(), ex.getMessage());
+        }
+    }
+
+    private void renderThumbnail(Path original, Path thumbnail) {
+        try {
+            if (Files.exists(thumbnail)) {
+                return;
+            }
+            BufferedImage image = decodeForThumbnail(original);
+            if (image == null) {
+                return;
+            }
+            double scale = Math.min(1.0, (double) thumbnailSize / Math.max(image.getWidth(), image.getHeight()));
+            int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+            int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+            BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = scaled.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(image, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            Path temp = Files.createTempFile(thumbnail.getParent(), thumbnail.getFileName().toString(), ".tmp");
+            try {
+                ImageIO.write(scaled, "png", temp.toFile());
+                Files.move(temp, thumbnail, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            logger.debug("Rendered thumbnail {} ({}x{})", thumbnail.getFileName(), width, height);
+        } catch (Exception ex) {
+            logger.error("Error rendering thumbnail for {}: {}", original.getFileName(), ex.getMessage(), ex);
+        }
+    }
+
+    // Reads the size from the header first, then decodes only every n-th pixel, at least twice the thumbnail size
+    private BufferedImage decodeForThumbnail(Path original) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                logger.debug("No image reader for {}; serving the original as thumbnail", original.getFileName());
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    logger.warn("Skipped thumbnail for {}: {}x{} is over {} pixels", original.getFileName(), width, height, maxPixels);
+                    return null;
+                }
+                int step = Math.max(1, Math.max(width, height) / (2 * thumbnailSize));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private Path pathFor(String hash, String name) {
+        return root.resolve(hash.substring(0, 2)).resolve(name);
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
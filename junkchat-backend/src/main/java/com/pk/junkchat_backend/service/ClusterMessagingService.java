@@ -0,0 +1,301 @@
+package com.pk.junkchat_backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pk.junkchat_backend.model.DeliveryEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Delivers events to a user wherever their WebSocket sessions live. Frames for users connected to this
+ * node go straight to the local broker; for every other node that holds a session of the user (per the
+ * SessionDirectory) the frame is forwarded once over the ClusterTransport and published by that node's broker.
+ * Directory lookups are cached for node-cache-ms; a connect or disconnect anywhere is broadcast so every node
+ * drops its entry for that user right away. Services keeping per-node caches use broadcast/onBroadcast the
+ * same way.
+ */
+@Service
+public class ClusterMessagingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterMessagingService.class);
+
+    public static final String EVENTS_QUEUE = "/queue/events";
+
+    private static final String SESSIONS_TOPIC = "sessions";
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private SessionDirectory sessionDirectory;
+
+    @Autowired
+    private ClusterTransport clusterTransport;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${junkchat.cluster.node-id:}")
+    private String configuredNodeId;
+
+    @Value("${junkchat.cluster.node-cache-ms:5000}")
+    private long nodeCacheMillis;
+
+    private String nodeId;
+    // userId -> nodes holding a session of the user, including empty sets for users who are offline
+    private Cache<Long, Set<String>> nodesByUser;
+
+    // userId -> ids of that user's sessions on this node
+    private final Map<Long, Set<String>> localSessions = new ConcurrentHashMap<>();
+    private final Map<String, Long> localSessionUsers = new ConcurrentHashMap<>();
+    // topic -> handler for broadcasts from other nodes
+    private final Map<String, Consumer<String>> broadcastListeners = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        nodeId = configuredNodeId == null || configuredNodeId.isBlank()
+                ? UUID.randomUUID().toString().replace("-", "").substring(0, 12)
+                : configuredNodeId;
+        nodesByUser = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(Duration.ofMillis(nodeCacheMillis))
+                .build();
+        onBroadcast(SESSIONS_TOPIC, userId -> nodesByUser.invalidate(Long.valueOf(userId)));
+        sessionDirectory.heartbeat(nodeId);
+        clusterTransport.start(nodeId, this::receive);
+        logger.info("Cluster messaging started on node {}", nodeId);
+    }
+
+    @PreDestroy
+    public void stop() {
+        clusterTransport.stop();
+        try {
+            sessionDirectory.removeNode(nodeId);
+        } catch (Exception ex) {
+            logger.warn("Could not remove node {} from session directory: {}", nodeId, ex.getMessage());
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Scheduled(fixedDelayString = "${junkchat.cluster.heartbeat-ms:10000}")
+    public void heartbeat() {
+        try {
+            sessionDirectory.heartbeat(nodeId);
+        } catch (Exception ex) {
+            logger.error("Cluster heartbeat failed: {}", ex.getMessage(), ex);
+        }
+    }
+
+    // Exactly one frame per event and user, on the user's single events queue
+    public void deliver(Long userId, DeliveryEvent event) {
+        sendToUser(userId, "/user/" + userId + EVENTS_QUEUE, event, event.isEphemeral());
+    }
+
+    /**
+     * Delivers many events in one go, e.g. a broadcast. Each event is serialized once and the same bytes are
+     * published locally and forwarded; users not cached are looked up in one directory query and every node
+     * gets a single frame carrying all of its events.
+     */
+    public void deliverAll(Map<Long, List<DeliveryEvent>> eventsByUser) {
+        Map<Long, Set<String>> nodesByUser = this.nodesByUser.getAll(eventsByUser.keySet(), userIds -> {
+            Map<Long, Set<String>> found = new HashMap<>(sessionDirectory.findNodes(Set.copyOf(userIds)));
+            userIds.forEach(userId -> found.putIfAbsent(userId, Set.of()));
+            return found;
+        });
+        Map<String, ArrayNode> framesByNode = new HashMap<>();
+        for (Map.Entry<Long, List<DeliveryEvent>> entry : eventsByUser.entrySet()) {
+            Long userId = entry.getKey();
+            String destination = "/user/" + userId + EVENTS_QUEUE;
+            Set<String> nodes = nodesByUser.getOrDefault(userId, Set.of());
+            boolean local = localSessions.containsKey(userId);
+            for (DeliveryEvent event : entry.getValue()) {
+                JsonNode payload = objectMapper.valueToTree(event);
+                if (local) {
+                    try {
+                        publish(destination, objectMapper.writeValueAsBytes(payload), event.isEphemeral());
+                    } catch (Exception ex) {
+                        logger.error("Could not publish event for {}: {}", destination, ex.getMessage(), ex);
+                    }
+                }
+                for (String target : nodes) {
+                    if (target.equals(nodeId)) {
+                        continue;
+                    }
+                    ObjectNode frame = framesByNode.computeIfAbsent(target, n -> objectMapper.createArrayNode()).addObject();
+                    frame.put("destination", destination);
+                    frame.put("ephemeral", event.isEphemeral());
+                    frame.set("payload", payload);
+                }
+            }
+        }
+        for (Map.Entry<String, ArrayNode> entry : framesByNode.entrySet()) {
+            try {
+                ObjectNode batch = objectMapper.createObjectNode();
+                batch.set("frames", entry.getValue());
+                clusterTransport.send(entry.getKey(), objectMapper.writeValueAsString(batch));
+            } catch (Exception ex) {
+                logger.error("Could not forward {} frames to node {}: {}", entry.getValue().size(), entry.getKey(), ex.getMessage(), ex);
+            }
+        }
+    }
+
+    // Hands body to the onBroadcast listener for topic on every other node; best effort
+    public void broadcast(String topic, String body) {
+        try {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("broadcast", topic);
+            node.put("origin", nodeId);
+            node.put("body", body);
+            clusterTransport.broadcast(objectMapper.writeValueAsString(node));
+        } catch (Exception ex) {
+            logger.error("Could not broadcast {} to other nodes: {}", topic, ex.getMessage(), ex);
+        }
+    }
+
+    public void onBroadcast(String topic, Consumer<String> listener) {
+        broadcastListeners.put(topic, listener);
+    }
+
+    private void sendToUser(Long userId, String destination, Object payload, boolean ephemeral) {
+        if (localSessions.containsKey(userId)) {
+            messagingTemplate.convertAndSend(destination, payload,
+                    ephemeral ? Map.<String, Object>of(DeliveryEvent.EPHEMERAL_HEADER, "true") : null);
+        }
+        Set<String> nodes = nodesByUser.get(userId, sessionDirectory::findNodes);
+        if (nodes.isEmpty() || nodes.size() == 1 && nodes.contains(nodeId)) {
+            return;
+        }
+        String frame;
+        try {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("destination", destination);
+            node.put("ephemeral", ephemeral);
+            node.set("payload", objectMapper.valueToTree(payload));
+            frame = objectMapper.writeValueAsString(node);
+        } catch (Exception ex) {
+            logger.error("Could not serialize frame for {}: {}", destination, ex.getMessage(), ex);
+            return;
+        }
+        for (String target : nodes) {
+            if (target.equals(nodeId)) {
+                continue;
+            }
+            try {
+                clusterTransport.send(target, frame);
+            } catch (Exception ex) {
+                logger.error("Could not forward frame for {} to node {}: {}", destination, target, ex.getMessage(), ex);
+            }
+        }
+    }
+
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        Principal user = event.getUser();
+        String sessionId = StompHeaderAccessor.wrap(event.getMessage()).getSessionId();
+        if (user == null || sessionId == null) {
+            return;
+        }
+        Long userId;
+        try {
+            userId = Long.valueOf(user.getName());
+        } catch (NumberFormatException ex) {
+            logger.warn("WebSocket session {} has a non-numeric principal {}", sessionId, user.getName());
+            return;
+        }
+        localSessionUsers.put(sessionId, userId);
+        localSessions.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(sessionId);
+        sessionDirectory.register(nodeId, sessionId, userId);
+        sessionsChanged(userId);
+        logger.debug("Registered WebSocket session {} for user {} on node {}", sessionId, userId, nodeId);
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        String sessionId = event.getSessionId();
+        Long userId = localSessionUsers.remove(sessionId);
+        if (userId == null) {
+            return;
+        }
+        localSessions.computeIfPresent(userId, (id, sessions) -> {
+            sessions.remove(sessionId);
+            return sessions.isEmpty() ? null : sessions;
+        });
+        sessionDirectory.unregister(nodeId, sessionId);
+        sessionsChanged(userId);
+        logger.debug("Unregistered WebSocket session {} for user {}", sessionId, userId);
+    }
+
+    // After the directory write, so a node reloading on the broadcast sees it
+    private void sessionsChanged(Long userId) {
+        nodesByUser.invalidate(userId);
+        broadcast(SESSIONS_TOPIC, String.valueOf(userId));
+    }
+
+    // Frames from other nodes are already JSON: publish the bytes as they are
+    private void receive(String frame) {
+        try {
+            JsonNode node = objectMapper.readTree(frame);
+            if (node.has("broadcast")) {
+                Consumer<String> listener = broadcastListeners.get(node.get("broadcast").asText());
+                if (listener != null && !nodeId.equals(node.path("origin").asText())) {
+                    listener.accept(node.path("body").asText());
+                }
+            } else if (node.has("frames")) {
+                for (JsonNode single : node.get("frames")) {
+                    publishFrame(single);
+                }
+            } else {
+                publishFrame(node);
+            }
+        } catch (Exception ex) {
+            logger.error("Could not publish cluster frame: {}", ex.getMessage(), ex);
+        }
+    }
+
+    private void publishFrame(JsonNode node) throws Exception {
+        publish(node.get("destination").asText(), objectMapper.writeValueAsBytes(node.get("payload")),
+                node.path("ephemeral").asBoolean());
+    }
+
+    private void publish(String destination, byte[] payload, boolean ephemeral) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (ephemeral) {
+            accessor.setNativeHeader(DeliveryEvent.EPHEMERAL_HEADER, "true");
+        }
+        accessor.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+    }
+}
@@ -0,0 +1,19 @@
+package com.pk.junkchat_backend.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Point-to-point delivery of opaque frames between backend nodes.
+ */
+public interface ClusterTransport {
+
+    // Starts receiving frames addressed to nodeId
+    void start(String nodeId, Consumer<String> receiver);
+
+    void send(String targetNodeId, String frame);
+
+    // To every node, possibly including the sender; frames must be small
+    void broadcast(String frame);
+
+    void stop();
+}
@@ -0,0 +1,67 @@
+package com.pk.junkchat_backend.service;
+
+import com.pk.junkchat_backend.model.ConversationSummary;
+import com.pk.junkchat_backend.model.Message;
+import com.pk.junkchat_backend.repository.ConversationSummaryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Service
+public class ConversationSummaryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationSummaryService.class);
+
+    @Autowired
+    private ConversationSummaryRepository conversationSummaryRepository;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        try {
+            if (conversationSummaryRepository.count() == 0) {
+                int inserted = conversationSummaryRepository.backfillFromMessages();
+                logger.info("Backfilled {} conversation summaries from existing messages", inserted);
+            }
+        } catch (Exception ex) {
+            logger.error("Error backfilling conversation summaries: {}", ex.getMessage(), ex);
+        }
+    }
+
+    public void recordMessage(Message message) {
+        Long senderId = message.getSenderId();
+        Long recipientId = message.getRecipientId();
+        conversationSummaryRepository.upsertLastMessage(senderId, recipientId, message.getId(), senderId,
+                message.getContent(), message.getSentAt());
+        conversationSummaryRepository.upsertLastMessage(recipientId, senderId, message.getId(), senderId,
+                message.getContent(), message.getSentAt());
+        logger.debug("Updated conversation summaries for message id={}", message.getId());
+    }
+
+    public void recordBroadcast(Long senderId, Long[] ids, Long[] recipientIds, String content, LocalDateTime sentAt) {
+        conversationSummaryRepository.upsertBroadcast(senderId, ids, recipientIds, content, sentAt);
+        logger.debug("Updated conversation summaries for {} broadcast messages", ids.length);
+    }
+
+    public void hide(Long userId, Long contactId) {
+        conversationSummaryRepository.deleteByUserIdAndContactId(userId, contactId);
+    }
+
+    public Optional<ConversationSummary> find(Long userId, Long contactId) {
+        return conversationSummaryRepository.findByUserIdAndContactId(userId, contactId);
+    }
+
+    public int purgeConversation(Long userId1, Long userId2, LocalDateTime expiredUpTo) {
+        return conversationSummaryRepository.deleteExpiredForConversation(userId1, userId2, expiredUpTo);
+    }
+
+    // Every message in a conversation whose latest message is past the cutoff has been deleted as well
+    public int purgeOlderThan(LocalDateTime cutoff) {
+        return conversationSummaryRepository.deleteOlderThan(cutoff);
+    }
+}
@@ -0,0 +1,52 @@
+package com.pk.junkchat_backend.service;
+
+import com.pk.junkchat_backend.model.ConversationWatermark;
+import com.pk.junkchat_backend.model.Message;
+import com.pk.junkchat_backend.repository.ConversationWatermarkRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class ConversationWatermarkService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationWatermarkService.class);
+
+    @Autowired
+    private ConversationWatermarkRepository conversationWatermarkRepository;
+
+    // Marks everything received so far as read with a single row write; message rows are untouched
+    public void markRead(Long userId, Long contactId) {
+        conversationWatermarkRepository.upsertReadUpToLatest(userId, contactId);
+        logger.debug("Moved read watermark: userId={}, contactId={}", userId, contactId);
+    }
+
+    // Sets read on each message from its recipient's watermark
+    public void applyReadState(List<Message> messages, Long userId1, Long userId2) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        Map<Long, ConversationWatermark> byReader = new HashMap<>();
+        for (ConversationWatermark watermark : conversationWatermarkRepository.findForConversation(userId1, userId2)) {
+            byReader.put(watermark.getUserId(), watermark);
+        }
+        for (Message message : messages) {
+            ConversationWatermark watermark = byReader.get(message.getRecipientId());
+            message.setRead(watermark != null && watermark.hasRead(message));
+        }
+    }
+
+    // Hides everything sent so far from userId with a single row write; message rows are untouched
+    public void clearConversation(Long userId, Long contactId) {
+        LocalDateTime now = LocalDateTime.now(ZoneId.of("UTC"));
+        conversationWatermarkRepository.upsertClearedBefore(userId, contactId, now);
+        logger.debug("Cleared conversation: userId={}, contactId={}, clearedBefore={}", userId, contactId, now);
+    }
+}
@@ -0,0 +1,67 @@
+package com.pk.junkchat_backend.service;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Session directory for a single instance, or several application contexts in one JVM (tests).
+ * The maps are static so every node created in the same JVM shares them.
+ */
+public class InMemorySessionDirectory implements SessionDirectory {
+
+    // userId -> ("nodeId/sessionId" -> nodeId), so lookups only touch the user's own sessions
+    private static final Map<Long, Map<String, String>> SESSIONS_BY_USER = new ConcurrentHashMap<>();
+    // "nodeId/sessionId" -> userId, for unregister
+    private static final Map<String, Long> USER_BY_SESSION = new ConcurrentHashMap<>();
+
+    @Override
+    public void register(String nodeId, String sessionId, Long userId) {
+        String key = nodeId + "/" + sessionId;
+        USER_BY_SESSION.put(key, userId);
+        SESSIONS_BY_USER.compute(userId, (id, sessions) -> {
+            Map<String, String> current = sessions != null ? sessions : new ConcurrentHashMap<>();
+            current.put(key, nodeId);
+            return current;
+        });
+    }
+
+    @Override
+    public void unregister(String nodeId, String sessionId) {
+        String key = nodeId + "/" + sessionId;
+        Long userId = USER_BY_SESSION.remove(key);
+        if (userId != null) {
+            remove(userId, key);
+        }
+    }
+
+    @Override
+    public Set<String> findNodes(Long userId) {
+        Map<String, String> sessions = SESSIONS_BY_USER.get(userId);
+        return sessions != null ? new HashSet<>(sessions.values()) : new HashSet<>();
+    }
+
+    @Override
+    public void heartbeat(String nodeId) {
+    }
+
+    @Override
+    public void removeNode(String nodeId) {
+        String prefix = nodeId + "/";
+        USER_BY_SESSION.entrySet().removeIf(entry -> {
+            if (!entry.getKey().startsWith(prefix)) {
+                return false;
+            }
+            remove(entry.getValue(), entry.getKey());
+            return true;
+        });
+    }
+
+    private void remove(Long userId, String key) {
+        SESSIONS_BY_USER.computeIfPresent(userId, (id, sessions) -> {
+            sessions.remove(key);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+}
@@ -0,0 +1,49 @@
+package com.pk.junkchat_backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Stand-in transport that hands frames directly to other nodes living in the same JVM. With a single
+ * node there is never anyone to send to, so this is also the default for a one-instance deployment.
+ */
+public class InProcessClusterTransport implements ClusterTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(InProcessClusterTransport.class);
+
+    private static final Map<String, Consumer<String>> RECEIVERS = new ConcurrentHashMap<>();
+
+    private String nodeId;
+
+    @Override
+    public void start(String nodeId, Consumer<String> receiver) {
+        this.nodeId = nodeId;
+        RECEIVERS.put(nodeId, receiver);
+    }
+
+    @Override
+    public void send(String targetNodeId, String frame) {
+        Consumer<String> receiver = RECEIVERS.get(targetNodeId);
+        if (receiver == null) {
+            logger.debug("Dropping frame for unknown node {}", targetNodeId);
+            return;
+        }
+        receiver.accept(frame);
+    }
+
+    @Override
+    public void broadcast(String frame) {
+        RECEIVERS.values().forEach(receiver -> receiver.accept(frame));
+    }
+
+    @Override
+    public void stop() {
+        if (nodeId != null) {
+            RECEIVERS.remove(nodeId);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.pk.junkchat_backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Session directory shared by all nodes through PostgreSQL. Nodes upsert a heartbeat row;
+ * sessions of a node whose heartbeat is older than the timeout are ignored and then purged.
+ */
+public class JdbcSessionDirectory implements SessionDirectory {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcSessionDirectory.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int nodeTimeoutSeconds;
+
+    public JdbcSessionDirectory(JdbcTemplate jdbcTemplate, int nodeTimeoutSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.nodeTimeoutSeconds = nodeTimeoutSeconds;
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS cluster_node (" +
+                "node_id varchar(64) PRIMARY KEY, last_seen timestamptz NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS cluster_session (" +
+                "node_id varchar(64) NOT NULL, session_id varchar(128) NOT NULL, user_id bigint NOT NULL, " +
+                "PRIMARY KEY (node_id, session_id))");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_cluster_session_user ON cluster_session (user_id)");
+    }
+
+    @Override
+    public void register(String nodeId, String sessionId, Long userId) {
+        jdbcTemplate.update("INSERT INTO cluster_session (node_id, session_id, user_id) VALUES (?, ?, ?) " +
+                "ON CONFLICT (node_id, session_id) DO UPDATE SET user_id = EXCLUDED.user_id", nodeId, sessionId, userId);
+    }
+
+    @Override
+    public void unregister(String nodeId, String sessionId) {
+        jdbcTemplate.update("DELETE FROM cluster_session WHERE node_id = ? AND session_id = ?", nodeId, sessionId);
+    }
+
+    @Override
+    public Set<String> findNodes(Long userId) {
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT DISTINCT s.node_id FROM cluster_session s JOIN cluster_node n ON n.node_id = s.node_id " +
+                        "WHERE s.user_id = ? AND n.last_seen > now() - make_interval(secs => ?)",
+                String.class, userId, nodeTimeoutSeconds));
+    }
+
+    @Override
+    public Map<Long, Set<String>> findNodes(Collection<Long> userIds) {
+        Map<Long, Set<String>> nodes = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return nodes;
+        }
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "SELECT DISTINCT s.user_id, s.node_id FROM cluster_session s JOIN cluster_node n ON n.node_id = s.node_id " +
+                            "WHERE s.user_id = ANY(?) AND n.last_seen > now() - make_interval(secs => ?)");
+            ps.setArray(1, con.createArrayOf("bigint", userIds.toArray()));
+            ps.setInt(2, nodeTimeoutSeconds);
+            return ps;
+        }, rs -> {
+            nodes.computeIfAbsent(rs.getLong(1), id -> new HashSet<>()).add(rs.getString(2));
+        });
+        return nodes;
+    }
+
+    @Override
+    public void heartbeat(String nodeId) {
+        jdbcTemplate.update("INSERT INTO cluster_node (node_id, last_seen) VALUES (?, now()) " +
+                "ON CONFLICT (node_id) DO UPDATE SET last_seen = now()", nodeId);
+        // Generous grace period so a node that was only paused (GC, slow DB) keeps its sessions
+        jdbcTemplate.update("DELETE FROM cluster_node WHERE last_seen < now() - make_interval(secs => ?)", nodeTimeoutSeconds * 10);
+        int purged = jdbcTemplate.update("DELETE FROM cluster_session s " +
+                "WHERE NOT EXISTS (SELECT 1 FROM cluster_node n WHERE n.node_id = s.node_id)");
+        if (purged > 0) {
+            logger.info("Purged {} WebSocket sessions of dead nodes", purged);
+        }
+    }
+
+    @Override
+    public void removeNode(String nodeId) {
+        jdbcTemplate.update("DELETE FROM cluster_session WHERE node_id = ?", nodeId);
+        jdbcTemplate.update("DELETE FROM cluster_node WHERE node_id = ?", nodeId);
+    }
+}
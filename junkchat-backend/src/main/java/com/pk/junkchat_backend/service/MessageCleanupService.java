@@ -1,6 +1,5 @@
 package com.pk.junkchat_backend.service;
 
-import com.pk.junkchat_backend.repository.MessageRepository;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,25 +7,34 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
 @Service
 public class MessageCleanupService {
 
     private static final Logger logger = LoggerFactory.getLogger(MessageCleanupService.class);
 
     @Autowired
-    private MessageRepository messageRepository;
+    private MessagePartitionService messagePartitionService;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
 
     @PostConstruct
     public void onStartup() {
         logger.info("MessageCleanupService initialized at {} - No cleanup triggered here", new java.util.Date());
     }
 
-    @Scheduled(fixedRate = 24 * 60 * 60 * 1000) // 3 minutes in milliseconds for testing
+    // Partitions are hourly, so running a few times an hour keeps the look-ahead filled and drops expire on time
+    @Scheduled(fixedRate = 10 * 60 * 1000, initialDelay = 10 * 60 * 1000)
     public void deleteOldMessages() {
         try {
-            logger.info("Starting scheduled cleanup of messages older than 3 minutes at {}", new java.util.Date());
-            int deletedCount = messageRepository.deleteMessagesOlderThan24Hours();
-            logger.info("Completed scheduled cleanup of {} old messages", deletedCount);
+            logger.info("Starting scheduled partition maintenance at {}", new java.util.Date());
+            performCleanup();
         } catch (Exception ex) {
             logger.error("Error during scheduled cleanup: {}", ex.getMessage(), ex);
         }
@@ -34,8 +42,16 @@ public class MessageCleanupService {
 
     // Add a method to catch external calls
     public void performCleanup() {
-        logger.info("Performing manual cleanup of messages older than 3 minutes at {}", new java.util.Date());
-        int deletedCount = messageRepository.deleteMessagesOlderThan24Hours();
-        logger.info("Completed manual cleanup of {} old messages", deletedCount);
+        int created = messagePartitionService.createUpcomingPartitions();
+        int dropped = messagePartitionService.dropExpiredPartitions();
+        if (dropped == 0) {
+            logger.info("Completed partition maintenance: created {} partitions, nothing expired", created);
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now(ZoneId.of("UTC")).minusHours(messagePartitionService.getRetentionHours());
+        int recalculated = unreadCounterService.recalculateAll(cutoff);
+        int purged = conversationSummaryService.purgeOlderThan(cutoff);
+        logger.info("Completed partition maintenance: created {} partitions, dropped {}, recalculated {} unread counters, purged {} conversation summaries",
+                created, dropped, recalculated, purged);
     }
 }
\ No newline at end of file
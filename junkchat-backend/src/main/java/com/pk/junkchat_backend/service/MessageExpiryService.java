@@ -0,0 +1,182 @@
+package com.pk.junkchat_backend.service;
+
+import com.pk.junkchat_backend.model.DeliveryEvent;
+import com.pk.junkchat_backend.model.Message;
+import com.pk.junkchat_backend.model.MessageExpiryEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Expires messages at their exact deadline (sentAt + retention) instead of in a daily sweep.
+ * Deadlines sit in a timing wheel with one-second ticks; every tick the conversations whose messages
+ * just expired get their unread counters and summaries corrected and an "expired up to" event delivered
+ * to both participants. Rows themselves are removed later, cheaply, by partition drops.
+ */
+@Service
+public class MessageExpiryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageExpiryService.class);
+
+    private static final long TICK_MILLIS = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ClusterMessagingService clusterMessagingService;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
+    @Value("${junkchat.messages.retention-hours:24}")
+    private int retentionHours;
+
+    @Value("${junkchat.messages.expiry-batch-size:500}")
+    private int batchSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // 60 one-second slots, 60 one-minute slots, 60 one-hour slots: covers retention of up to 60 hours
+    private final TimingWheel<ExpiringBatch> wheel = new TimingWheel<>(TICK_MILLIS, 60, 3, System.currentTimeMillis());
+
+    // Latest wheel entry per conversation, so messages expiring within the same tick share one entry
+    private final Map<String, ExpiringBatch> openBatches = new HashMap<>();
+
+    // Expired conversations waiting to be processed, oldest first
+    private final Map<String, ExpiringBatch> expired = new LinkedHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadDeadlines() {
+        try {
+            LocalDateTime cutoff = currentCutoff();
+            jdbcTemplate.query(
+                    "SELECT user_low_id, user_high_id, MAX(sent_at) FROM message WHERE sent_at > ? " +
+                            "GROUP BY user_low_id, user_high_id, date_trunc('second', sent_at)",
+                    rs -> {
+                        schedule(rs.getLong(1), rs.getLong(2), rs.getTimestamp(3).toLocalDateTime());
+                    }, cutoff);
+            logger.info("Loaded {} message expiry deadlines", wheel.size());
+        } catch (Exception ex) {
+            logger.error("Error loading message expiry deadlines: {}", ex.getMessage(), ex);
+        }
+    }
+
+    public void schedule(Message message) {
+        schedule(message.getUserLowId(), message.getUserHighId(), message.getSentAt());
+    }
+
+    public LocalDateTime currentCutoff() {
+        return LocalDateTime.now(ZoneOffset.UTC).minusHours(retentionHours);
+    }
+
+    @Scheduled(fixedDelay = TICK_MILLIS)
+    public void expireDueMessages() {
+        lock.lock();
+        try {
+            wheel.advance(System.currentTimeMillis(), batch -> {
+                openBatches.remove(batch.key(), batch);
+                ExpiringBatch previous = expired.putIfAbsent(batch.key(), batch);
+                if (previous != null && batch.upTo.isAfter(previous.upTo)) {
+                    previous.upTo = batch.upTo;
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
+        int processed = 0;
+        ExpiringBatch batch;
+        while (processed < batchSize && (batch = nextExpired()) != null) {
+            try {
+                publishExpiry(batch);
+            } catch (Exception ex) {
+                logger.error("Error expiring messages for conversation {}: {}", batch.key(), ex.getMessage(), ex);
+            }
+            processed++;
+        }
+        if (processed > 0) {
+            logger.debug("Expired messages in {} conversations", processed);
+        }
+    }
+
+    private void schedule(long userLowId, long userHighId, LocalDateTime sentAt) {
+        long deadline = sentAt.plusHours(retentionHours).toInstant(ZoneOffset.UTC).toEpochMilli();
+        long deadlineTick = Math.floorDiv(deadline + TICK_MILLIS - 1, TICK_MILLIS);
+        String key = userLowId + ":" + userHighId;
+        lock.lock();
+        try {
+            ExpiringBatch open = openBatches.get(key);
+            if (open != null && open.deadlineTick == deadlineTick) {
+                if (sentAt.isAfter(open.upTo)) {
+                    open.upTo = sentAt;
+                }
+                return;
+            }
+            ExpiringBatch batch = new ExpiringBatch(userLowId, userHighId, sentAt, deadlineTick);
+            if (wheel.add(deadline, batch)) {
+                openBatches.put(key, batch);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ExpiringBatch nextExpired() {
+        lock.lock();
+        try {
+            Iterator<ExpiringBatch> iterator = expired.values().iterator();
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            ExpiringBatch batch = iterator.next();
+            iterator.remove();
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void publishExpiry(ExpiringBatch batch) {
+        unreadCounterService.recalculateConversation(batch.userLowId, batch.userHighId, batch.upTo);
+        conversationSummaryService.purgeConversation(batch.userLowId, batch.userHighId, batch.upTo);
+        clusterMessagingService.deliver(batch.userLowId,
+                new DeliveryEvent(DeliveryEvent.EXPIRED, new MessageExpiryEvent(batch.userHighId, batch.upTo)));
+        clusterMessagingService.deliver(batch.userHighId,
+                new DeliveryEvent(DeliveryEvent.EXPIRED, new MessageExpiryEvent(batch.userLowId, batch.upTo)));
+    }
+
+    private static class ExpiringBatch {
+        private final long userLowId;
+        private final long userHighId;
+        private final long deadlineTick;
+        private LocalDateTime upTo;
+
+        ExpiringBatch(long userLowId, long userHighId, LocalDateTime upTo, long deadlineTick) {
+            this.userLowId = userLowId;
+            this.userHighId = userHighId;
+            this.upTo = upTo;
+            this.deadlineTick = deadlineTick;
+        }
+
+        String key() {
+            return userLowId + ":" + userHighId;
+        }
+    }
+}
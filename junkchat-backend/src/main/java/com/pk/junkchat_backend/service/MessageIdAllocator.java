@@ -0,0 +1,58 @@
+package com.pk.junkchat_backend.service;
+
+import com.pk.junkchat_backend.model.Message;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out message ids outside of Hibernate, with the same pooled semantics as Message's generator:
+ * every nextval('message_seq') value v reserves the ids (v - ID_ALLOCATION_SIZE, v].
+ * Refuses to start unless the sequence really increments by ID_ALLOCATION_SIZE; otherwise blocks would overlap.
+ */
+@Service
+@DependsOn("messageSequenceInitializer")
+public class MessageIdAllocator {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private long nextId;
+    private long maxId = -1;
+
+    @PostConstruct
+    public void verifySequence() {
+        Long increment = jdbcTemplate.queryForObject(
+                "SELECT increment_by FROM pg_sequences WHERE schemaname = current_schema() AND sequencename = 'message_seq'", Long.class);
+        if (increment == null || increment != Message.ID_ALLOCATION_SIZE) {
+            throw new IllegalStateException("message_seq increments by " + increment + ", pooled allocation needs " + Message.ID_ALLOCATION_SIZE);
+        }
+    }
+
+    public long nextId() {
+        lock.lock();
+        try {
+            if (nextId > maxId) {
+                long value = jdbcTemplate.queryForObject("SELECT nextval('message_seq')", Long.class);
+                maxId = value;
+                nextId = Math.max(1, value - Message.ID_ALLOCATION_SIZE + 1);
+            }
+            return nextId++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Long[] nextIds(int count) {
+        Long[] ids = new Long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = nextId();
+        }
+        return ids;
+    }
+}
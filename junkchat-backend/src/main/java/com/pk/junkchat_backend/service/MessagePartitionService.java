@@ -0,0 +1,112 @@
+package com.pk.junkchat_backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the hourly range partitions of the message table in shape: upcoming hours are created ahead
+ * of time, and partitions whose whole range is past retention are detached and dropped.
+ */
+@Service
+public class MessagePartitionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessagePartitionService.class);
+
+    private static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHH");
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('([^']+)'\\)");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${junkchat.messages.retention-hours:24}")
+    private int retentionHours;
+
+    @Value("${junkchat.messages.partition-lookahead-hours:6}")
+    private int lookaheadHours;
+
+    public int getRetentionHours() {
+        return retentionHours;
+    }
+
+    public boolean isPartitioned() {
+        String kind = jdbcTemplate.query("SELECT relkind FROM pg_class WHERE oid = to_regclass('message')",
+                rs -> rs.next() ? rs.getString(1) : null);
+        return "p".equals(kind);
+    }
+
+    public int createUpcomingPartitions() {
+        LocalDateTime currentHour = now().truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime from = currentHour;
+        for (Partition partition : listPartitions()) {
+            if (partition.upperBound != null && partition.upperBound.isAfter(from)) {
+                from = partition.upperBound;
+            }
+        }
+        LocalDateTime until = currentHour.plusHours(lookaheadHours + 1);
+        int created = 0;
+        for (LocalDateTime start = from; start.isBefore(until); start = start.plusHours(1)) {
+            String name = "message_p" + start.format(NAME_FORMAT);
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF message FOR VALUES FROM ('"
+                    + start.format(BOUND_FORMAT) + "') TO ('" + start.plusHours(1).format(BOUND_FORMAT) + "')");
+            created++;
+        }
+        if (created > 0) {
+            logger.info("Created {} message partitions starting at {}", created, from);
+        }
+        return created;
+    }
+
+    // Dropping a partition is a catalog operation; no rows are deleted or vacuumed
+    public int dropExpiredPartitions() {
+        LocalDateTime cutoff = now().minusHours(retentionHours);
+        int dropped = 0;
+        for (Partition partition : listPartitions()) {
+            if (partition.upperBound != null && !partition.upperBound.isAfter(cutoff)) {
+                jdbcTemplate.execute("ALTER TABLE message DETACH PARTITION " + partition.name);
+                jdbcTemplate.execute("DROP TABLE " + partition.name);
+                logger.info("Dropped expired message partition {} (upper bound {})", partition.name, partition.upperBound);
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    private List<Partition> listPartitions() {
+        return jdbcTemplate.query(
+                "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                        "WHERE i.inhparent = to_regclass('message')",
+                (rs, rowNum) -> new Partition(rs.getString(1), parseUpperBound(rs.getString(2))));
+    }
+
+    private LocalDateTime parseUpperBound(String bound) {
+        Matcher matcher = UPPER_BOUND.matcher(bound);
+        return matcher.find() ? LocalDateTime.parse(matcher.group(1), BOUND_FORMAT) : null;
+    }
+
+    private LocalDateTime now() {
+        return LocalDateTime.now(ZoneId.of("UTC"));
+    }
+
+    private static class Partition {
+        private final String name;
+        private final LocalDateTime upperBound;
+
+        Partition(String name, LocalDateTime upperBound) {
+            this.name = name;
+            this.upperBound = upperBound;
+        }
+    }
+}
@@ -1,17 +1,30 @@
 package com.pk.junkchat_backend.service;
 
 import com.pk.junkchat_backend.model.Contact;
+import com.pk.junkchat_backend.model.ContactSummary;
+import com.pk.junkchat_backend.model.ConversationSummary;
+import com.pk.junkchat_backend.model.DeliveryEvent;
 import com.pk.junkchat_backend.model.Message;
+import com.pk.junkchat_backend.model.MessageCursor;
+import com.pk.junkchat_backend.model.MessageView;
 import com.pk.junkchat_backend.model.User;
 import com.pk.junkchat_backend.repository.ContactRepository;
 import com.pk.junkchat_backend.repository.MessageRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -21,66 +34,231 @@ public class MessageService {
     private MessageRepository messageRepository;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private ClusterMessagingService clusterMessagingService;
 
     @Autowired
     private ContactRepository contactRepository;
 
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
+    @Autowired
+    private MessageExpiryService messageExpiryService;
+
+    @Autowired
+    private MessageWriteBehindService messageWriteBehindService;
+
+    @Autowired
+    private MessageIdAllocator messageIdAllocator;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private ConversationWatermarkService conversationWatermarkService;
+
+    @Autowired
+    private ReadYourWritesTracker readYourWritesTracker;
+
     public Message sendMessage(User sender, User recipient, String content) {
         Message message = new Message();
         message.setSender(sender);
         message.setRecipient(recipient);
         message.setContent(content);
         message.setSentAt(LocalDateTime.now(ZoneId.of("UTC"))); // Use UTC
-        Message savedMessage = messageRepository.save(message);
+        Message savedMessage;
+        if (messageWriteBehindService.isEnabled()) {
+            // Published now, inserted (and counted) by the background writer
+            message.setId(messageIdAllocator.nextId());
+            message.assignConversationKey();
+            messageWriteBehindService.enqueue(message);
+            savedMessage = message;
+        } else {
+            savedMessage = messageRepository.save(message);
+            unreadCounterService.increment(recipient.getId(), sender.getId());
+            conversationSummaryService.recordMessage(savedMessage);
+        }
+        messageExpiryService.schedule(savedMessage);
+        // Both sides read the conversation back as soon as the message event arrives
+        readYourWritesTracker.recordWrite(sender.getId(), recipient.getId());
 
         // Add contacts for both sender and recipient
-        boolean senderContactAdded = false;
-        boolean recipientContactAdded = false;
-
+        // Messages name participants by id only, so a new contact entry goes out ahead of the first message
         if (!contactRepository.existsByUserIdAndContactId(sender.getId(), recipient.getId())) {
             Contact senderContact = new Contact();
             senderContact.setUser(sender);
             senderContact.setContact(recipient);
             contactRepository.save(senderContact);
-            senderContactAdded = true;
+            presenceService.watchersChanged(recipient.getId());
+            clusterMessagingService.deliver(sender.getId(), new DeliveryEvent(DeliveryEvent.CONTACT, ContactSummary.of(recipient)));
         }
         if (!contactRepository.existsByUserIdAndContactId(recipient.getId(), sender.getId())) {
             Contact recipientContact = new Contact();
             recipientContact.setUser(recipient);
             recipientContact.setContact(sender);
             contactRepository.save(recipientContact);
-            recipientContactAdded = true;
+            presenceService.watchersChanged(sender.getId());
+            clusterMessagingService.deliver(recipient.getId(), new DeliveryEvent(DeliveryEvent.CONTACT, ContactSummary.of(sender)));
+        }
+
+        // One event per participant; clients update the conversation, contact list and unread badge from it
+        DeliveryEvent event = new DeliveryEvent(DeliveryEvent.MESSAGE, MessageView.of(savedMessage));
+        clusterMessagingService.deliver(sender.getId(), event);
+        clusterMessagingService.deliver(recipient.getId(), event);
+
+        return savedMessage;
+    }
+
+    /**
+     * Sends the same content from sender to every recipient. Messages, missing contacts, unread counters and
+     * summaries are each written with one statement for all recipients, in one transaction, and the events go
+     * out in one batched delivery; cost grows with the number of rows, not the number of round trips.
+     */
+    public List<Message> broadcastMessage(User sender, List<User> recipients, String content) {
+        if (recipients.isEmpty()) {
+            return List.of();
+        }
+        LocalDateTime sentAt = LocalDateTime.now(ZoneId.of("UTC"));
+        Long[] ids = messageIdAllocator.nextIds(recipients.size());
+        Long[] recipientIds = new Long[recipients.size()];
+        List<Message> messages = new ArrayList<>(recipients.size());
+        for (int i = 0; i < recipients.size(); i++) {
+            User recipient = recipients.get(i);
+            recipientIds[i] = recipient.getId();
+            Message message = new Message();
+            message.setId(ids[i]);
+            message.setSender(sender);
+            message.setRecipient(recipient);
+            message.setContent(content);
+            message.setSentAt(sentAt);
+            message.assignConversationKey();
+            messages.add(message);
         }
 
-        // Publish contact update notifications
-        if (senderContactAdded) {
-            messagingTemplate.convertAndSend("/topic/contacts/" + sender.getId(), recipient);
+        List<Object[]> contactsAdded = transactionTemplate.execute(status -> {
+            messageRepository.insertBroadcast(sender.getId(), content, sentAt, ids, recipientIds);
+            List<Object[]> added = contactRepository.insertMissingContacts(sender.getId(), recipientIds);
+            unreadCounterService.incrementAll(recipientIds, sender.getId());
+            conversationSummaryService.recordBroadcast(sender.getId(), ids, recipientIds, content, sentAt);
+            return added;
+        });
+        // Recipients newly in the sender's contacts, and recipients who newly have the sender in theirs
+        Set<Long> addedBySender = new HashSet<>();
+        Set<Long> addedSender = new HashSet<>();
+        for (Object[] pair : contactsAdded != null ? contactsAdded : List.<Object[]>of()) {
+            long userId = ((Number) pair[0]).longValue();
+            long contactId = ((Number) pair[1]).longValue();
+            if (userId == sender.getId()) {
+                addedBySender.add(contactId);
+            } else {
+                addedSender.add(userId);
+            }
         }
-        if (recipientContactAdded) {
-            messagingTemplate.convertAndSend("/topic/contacts/" + recipient.getId(), sender);
+        // The user on the contact side of an added pair has a new watcher
+        if (!addedSender.isEmpty()) {
+            presenceService.watchersChanged(sender.getId());
         }
+        addedBySender.forEach(presenceService::watchersChanged);
+        messages.forEach(messageExpiryService::schedule);
+        readYourWritesTracker.recordWrite(sender.getId());
+        readYourWritesTracker.recordWrite(recipientIds);
 
-        // Publish message to both sender and recipient
-        messagingTemplate.convertAndSend("/topic/messages/" + sender.getId() + "/" + recipient.getId(), savedMessage);
-        messagingTemplate.convertAndSend("/topic/messages/" + recipient.getId() + "/" + sender.getId(), savedMessage);
+        // Each recipient gets their own message; the sender gets all of them for their open conversations.
+        // Whoever gained a contact gets its identity first, since messages carry ids only.
+        Map<Long, List<DeliveryEvent>> events = new HashMap<>();
+        List<DeliveryEvent> senderEvents = new ArrayList<>(messages.size() + addedBySender.size());
+        DeliveryEvent senderContact = addedSender.isEmpty() ? null : new DeliveryEvent(DeliveryEvent.CONTACT, ContactSummary.of(sender));
+        for (int i = 0; i < messages.size(); i++) {
+            DeliveryEvent event = new DeliveryEvent(DeliveryEvent.MESSAGE, MessageView.of(messages.get(i)));
+            if (addedBySender.contains(recipientIds[i])) {
+                senderEvents.add(new DeliveryEvent(DeliveryEvent.CONTACT, ContactSummary.of(recipients.get(i))));
+            }
+            if (addedSender.contains(recipientIds[i])) {
+                events.put(recipientIds[i], List.of(senderContact, event));
+            } else {
+                events.put(recipientIds[i], List.of(event));
+            }
+            senderEvents.add(event);
+        }
+        events.put(sender.getId(), senderEvents);
+        clusterMessagingService.deliverAll(events);
 
-        return savedMessage;
+        return messages;
     }
 
-    public List<Message> getMessagesBetweenUsers(User user1, User user2) {
-        List<Message> messages = messageRepository.findMessagesBetweenUsers(user1.getId(), user2.getId());
-        return messages.stream()
-                .filter(message -> message.getHiddenForUserIds() == null ||
-                        !containsUserId(message.getHiddenForUserIds(), user1.getId()))
-                .collect(Collectors.toList());
+    // Marks the conversation read for reader and pushes the refreshed contact entry to all of reader's sessions
+    public void markConversationRead(User reader, User contact) {
+        if (!messageWriteBehindService.pendingBetween(reader.getId(), contact.getId()).isEmpty()) {
+            // Otherwise the writer would insert them unread and bump the counter after this reset
+            messageWriteBehindService.awaitPersisted(1000);
+        }
+        conversationWatermarkService.markRead(reader.getId(), contact.getId());
+        unreadCounterService.reset(reader.getId(), contact.getId());
+        readYourWritesTracker.recordWrite(reader.getId());
+
+        ConversationSummary summary = conversationSummaryService.find(reader.getId(), contact.getId()).orElse(null);
+        ContactSummary contactUpdate = ContactSummary.of(contact, summary,
+                unreadCounterService.getUnreadCount(reader.getId(), contact.getId()));
+        clusterMessagingService.deliver(reader.getId(), new DeliveryEvent(DeliveryEvent.CONTACT, contactUpdate));
+    }
+
+    /**
+     * Returns one page of the conversation as seen by user1, oldest first.
+     * Without a cursor this is the newest page; "before" pages backwards and "after" pages forwards.
+     */
+    @Transactional(readOnly = true)
+    public List<Message> getMessagePage(User user1, User user2, MessageCursor before, MessageCursor after, int limit) {
+        List<Message> messages;
+        LocalDateTime expiredBefore = messageExpiryService.currentCutoff();
+        List<Message> page;
+        if (after != null) {
+            page = messageRepository.findMessagesBetweenUsersAfter(user1.getId(), user2.getId(),
+                    expiredBefore, after.getSentAt(), after.getId(), limit);
+            page = withPending(page, user1, user2, after, limit);
+            conversationWatermarkService.applyReadState(page, user1.getId(), user2.getId());
+            return page;
+        } else if (before != null) {
+            messages = messageRepository.findMessagesBetweenUsersBefore(user1.getId(), user2.getId(),
+                    expiredBefore, before.getSentAt(), before.getId(), limit);
+        } else {
+            messages = messageRepository.findLatestMessagesBetweenUsers(user1.getId(), user2.getId(), expiredBefore, limit);
+        }
+        List<Message> ascending = new ArrayList<>(messages);
+        Collections.reverse(ascending);
+        page = before == null ? withPending(ascending, user1, user2, null, limit) : ascending;
+        conversationWatermarkService.applyReadState(page, user1.getId(), user2.getId());
+        return page;
     }
 
-    private boolean containsUserId(Long[] userIds, Long userId) {
-        if (userIds == null) return false;
-        for (Long id : userIds) {
-            if (id != null && id.equals(userId)) return true;
+    // Adds write-behind messages that are not committed yet to the newest page, or to the page following after
+    private List<Message> withPending(List<Message> page, User user1, User user2, MessageCursor after, int limit) {
+        List<Message> pending = messageWriteBehindService.pendingBetween(user1.getId(), user2.getId());
+        if (pending.isEmpty()) {
+            return page;
         }
-        return false;
+        Set<Long> ids = page.stream().map(Message::getId).collect(Collectors.toSet());
+        List<Message> merged = new ArrayList<>(page);
+        for (Message message : pending) {
+            if (!ids.contains(message.getId()) && (after == null || isAfter(message, after))) {
+                merged.add(message);
+            }
+        }
+        merged.sort(Comparator.comparing(Message::getSentAt).thenComparing(Message::getId));
+        if (merged.size() <= limit) {
+            return merged;
+        }
+        // A forward page keeps its oldest messages, the newest page its newest
+        return after != null ? merged.subList(0, limit) : merged.subList(merged.size() - limit, merged.size());
+    }
+
+    private static boolean isAfter(Message message, MessageCursor cursor) {
+        int bySentAt = message.getSentAt().compareTo(cursor.getSentAt());
+        return bySentAt > 0 || bySentAt == 0 && message.getId() > cursor.getId();
     }
 }
\ No newline at end of file
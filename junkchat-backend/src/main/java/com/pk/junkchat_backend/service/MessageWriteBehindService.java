@@ -0,0 +1,300 @@
+package com.pk.junkchat_backend.service;
+
+import com.pk.junkchat_backend.model.DeliveryEvent;
+import com.pk.junkchat_backend.model.Message;
+import com.pk.junkchat_backend.model.MessageView;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Optional write-behind persistence for messages (junkchat.messages.write-behind.enabled).
+ * A message gets its id from the pooled message_seq up front, is published right away, and is inserted later by a
+ * single writer thread in JDBC batches of up to batch-size, at least every flush-interval-ms.
+ * Unread counters and conversation summaries are updated by the writer after each batch commits.
+ *
+ * The queue is bounded: when it stays full for offer-timeout-ms the message is written synchronously instead,
+ * which pushes back on senders; a failed synchronous write is thrown to the sender rather than dropped. A queued
+ * message that still fails after retries is reported to both participants as a "message-failed" event, since
+ * they have already been shown it. On shutdown the writer drains everything still queued before the DataSource
+ * closes; sends arriving meanwhile are written synchronously.
+ */
+@Service
+public class MessageWriteBehindService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageWriteBehindService.class);
+
+    private static final String INSERT_SQL = "INSERT INTO message (id, sender_id, recipient_id, content, sent_at, user_low_id, user_high_id) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
+    @Autowired
+    private ReadYourWritesTracker readYourWritesTracker;
+
+    @Autowired
+    private ClusterMessagingService clusterMessagingService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${junkchat.messages.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${junkchat.messages.write-behind.batch-size:200}")
+    private int batchSize;
+
+    @Value("${junkchat.messages.write-behind.flush-interval-ms:20}")
+    private long flushIntervalMillis;
+
+    @Value("${junkchat.messages.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${junkchat.messages.write-behind.offer-timeout-ms:100}")
+    private long offerTimeoutMillis;
+
+    private BlockingQueue<Message> queue;
+    private volatile List<Message> inFlight = List.of();
+    private volatile boolean running;
+    private Thread writer;
+    private Counter persistedCounter;
+    private Counter failedCounter;
+
+    // Lets readers wait until everything enqueued before them is committed or given up on
+    private final ReentrantLock progressLock = new ReentrantLock();
+    private final Condition progressed = progressLock.newCondition();
+    private long enqueuedCount;
+    private long settledCount;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        Gauge.builder("messages.write-behind.queued", queue, BlockingQueue::size).register(meterRegistry);
+        persistedCounter = Counter.builder("messages.write-behind.persisted").register(meterRegistry);
+        failedCounter = Counter.builder("messages.write-behind.failed").register(meterRegistry);
+        running = true;
+        writer = new Thread(this::runWriter, "message-writer");
+        writer.start();
+        logger.info("Message write-behind enabled: batch size {}, flush interval {} ms, queue capacity {}",
+                batchSize, flushIntervalMillis, queueCapacity);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (writer == null) {
+            return;
+        }
+        // Not interrupted: the writer sees the flag within one poll interval and must not cut its retries short
+        running = false;
+        try {
+            while (writer.isAlive()) {
+                writer.join(TimeUnit.SECONDS.toMillis(10));
+                if (writer.isAlive()) {
+                    logger.warn("Still draining the message writer, {} messages queued", queue.size());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while draining the message writer, {} messages still queued", queue.size());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues an already-identified message for insertion. Falls back to a synchronous write when the queue is full
+     * or the writer is shutting down; that write throws if it fails, before anything has been published.
+     */
+    public void enqueue(Message message) {
+        boolean queued = false;
+        if (running) {
+            try {
+                queued = queue.offer(message, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!queued) {
+            insert(List.of(message));
+            return;
+        }
+        progressLock.lock();
+        try {
+            enqueuedCount++;
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    // Messages of the conversation that are not committed yet, so reads right after a send still see them
+    public List<Message> pendingBetween(Long userId1, Long userId2) {
+        if (!enabled) {
+            return List.of();
+        }
+        long low = Math.min(userId1, userId2);
+        long high = Math.max(userId1, userId2);
+        List<Message> pending = new ArrayList<>();
+        for (Message message : inFlight) {
+            if (message.getUserLowId() == low && message.getUserHighId() == high) {
+                pending.add(message);
+            }
+        }
+        for (Message message : queue) {
+            if (message.getUserLowId() == low && message.getUserHighId() == high) {
+                pending.add(message);
+            }
+        }
+        return pending;
+    }
+
+    // Waits (bounded) until every message queued before this call is committed or reported failed
+    public void awaitPersisted(long timeoutMillis) {
+        if (!enabled) {
+            return;
+        }
+        progressLock.lock();
+        try {
+            long target = enqueuedCount;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (settledCount < target) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    logger.warn("Timed out waiting for message writer ({} of {} settled)", settledCount, target);
+                    return;
+                }
+                progressed.awaitNanos(remaining);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    private void runWriter() {
+        List<Message> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Message first = running ? queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS) : queue.poll();
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                inFlight = List.copyOf(batch);
+                persist(batch);
+                progressLock.lock();
+                try {
+                    settledCount += batch.size();
+                    progressed.signalAll();
+                } finally {
+                    progressLock.unlock();
+                }
+            } catch (InterruptedException ex) {
+                // Loop again; the condition ends the writer only once the queue is empty
+            } finally {
+                inFlight = List.of();
+                batch.clear();
+            }
+        }
+        logger.info("Message writer drained and stopped");
+    }
+
+    // Background writer only: retries, then reports what still fails to its participants
+    private void persist(List<Message> messages) {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                insert(messages);
+                return;
+            } catch (Exception ex) {
+                logger.warn("Message batch insert failed (attempt {} of {}, {} messages): {}", attempt, MAX_ATTEMPTS, messages.size(), ex.getMessage());
+                if (messages.size() > 1 && attempt == MAX_ATTEMPTS) {
+                    // Isolate the bad row(s) instead of losing the whole batch
+                    for (Message message : messages) {
+                        persist(List.of(message));
+                    }
+                    return;
+                }
+                try {
+                    Thread.sleep(100L * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        Message message = messages.get(0);
+        logger.error("Dropping message id={} after {} failed inserts", message.getId(), MAX_ATTEMPTS);
+        failedCounter.increment();
+        try {
+            DeliveryEvent event = new DeliveryEvent(DeliveryEvent.MESSAGE_FAILED, MessageView.of(message));
+            clusterMessagingService.deliver(message.getSenderId(), event);
+            clusterMessagingService.deliver(message.getRecipientId(), event);
+        } catch (Exception ex) {
+            logger.error("Error reporting failed message id={}: {}", message.getId(), ex.getMessage(), ex);
+        }
+    }
+
+    private void insert(List<Message> messages) {
+        transactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.batchUpdate(INSERT_SQL, messages, messages.size(), (ps, message) -> {
+                    ps.setLong(1, message.getId());
+                    ps.setLong(2, message.getSenderId());
+                    ps.setLong(3, message.getRecipientId());
+                    ps.setString(4, message.getContent());
+                    ps.setTimestamp(5, Timestamp.valueOf(message.getSentAt()));
+                    ps.setLong(6, message.getUserLowId());
+                    ps.setLong(7, message.getUserHighId());
+                }));
+        afterInsert(messages);
+        if (persistedCounter != null) {
+            persistedCounter.increment(messages.size());
+        }
+    }
+
+    private void afterInsert(List<Message> messages) {
+        for (Message message : messages) {
+            try {
+                unreadCounterService.increment(message.getRecipientId(), message.getSenderId());
+                conversationSummaryService.recordMessage(message);
+                // The message leaves the pending list now; keep both sides on the primary until replicas have it
+                readYourWritesTracker.recordWrite(message.getSenderId(), message.getRecipientId());
+            } catch (Exception ex) {
+                logger.error("Error updating counters for message id={}: {}", message.getId(), ex.getMessage(), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.pk.junkchat_backend.service;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Transport over PostgreSQL LISTEN/NOTIFY. Every node listens on its own channel, so only the node a frame
+ * is addressed to wakes up for it. NOTIFY payloads are limited to 8000 bytes; bigger frames
+ * (e.g. a batch of many events for one node) are parked in cluster_frame and the notification
+ * only carries the row id, which the receiver deletes as it reads. Broadcasts go to one channel all nodes
+ * listen on and cannot be spilled.
+ */
+public class PostgresClusterTransport implements ClusterTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostgresClusterTransport.class);
+
+    private static final int MAX_NOTIFY_BYTES = 7900;
+    private static final String SPILLED_PREFIX = "#";
+    private static final long PURGE_INTERVAL_MILLIS = 60_000;
+    private static final String BROADCAST_CHANNEL = "junkchat_all";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile boolean running;
+    private Thread listener;
+    private String channel;
+    private Consumer<String> receiver;
+
+    public PostgresClusterTransport(DataSource dataSource, JdbcTemplate jdbcTemplate) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS cluster_frame (" +
+                "id bigserial PRIMARY KEY, payload text NOT NULL, created_at timestamptz NOT NULL DEFAULT now())");
+    }
+
+    @Override
+    public void start(String nodeId, Consumer<String> receiver) {
+        this.channel = channelFor(nodeId);
+        this.receiver = receiver;
+        this.running = true;
+        this.listener = new Thread(this::listen, "cluster-listener");
+        this.listener.setDaemon(true);
+        this.listener.start();
+    }
+
+    @Override
+    public void send(String targetNodeId, String frame) {
+        String payload = frame;
+        if (frame.getBytes(StandardCharsets.UTF_8).length > MAX_NOTIFY_BYTES) {
+            Long id = jdbcTemplate.queryForObject("INSERT INTO cluster_frame (payload) VALUES (?) RETURNING id", Long.class, frame);
+            payload = SPILLED_PREFIX + id;
+        }
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> null, channelFor(targetNodeId), payload);
+    }
+
+    @Override
+    public void broadcast(String frame) {
+        if (frame.getBytes(StandardCharsets.UTF_8).length > MAX_NOTIFY_BYTES) {
+            throw new IllegalArgumentException("Broadcast frame exceeds " + MAX_NOTIFY_BYTES + " bytes");
+        }
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> null, BROADCAST_CHANNEL, frame);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+
+    private void listen() {
+        long lastPurge = 0;
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                    statement.execute("LISTEN " + BROADCAST_CHANNEL);
+                }
+                logger.info("Listening for cluster frames on channel {}", channel);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(1000);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            deliver(notification.getParameter());
+                        }
+                    }
+                    if (System.currentTimeMillis() - lastPurge > PURGE_INTERVAL_MILLIS) {
+                        // Frames whose target died before picking them up
+                        jdbcTemplate.update("DELETE FROM cluster_frame WHERE created_at < now() - interval '5 minutes'");
+                        lastPurge = System.currentTimeMillis();
+                    }
+                }
+            } catch (Exception ex) {
+                if (!running) {
+                    return;
+                }
+                logger.error("Cluster listener connection failed, reconnecting: {}", ex.getMessage(), ex);
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void deliver(String payload) {
+        try {
+            String frame = payload;
+            if (payload.startsWith(SPILLED_PREFIX)) {
+                List<String> rows = jdbcTemplate.queryForList("DELETE FROM cluster_frame WHERE id = ? RETURNING payload",
+                        String.class, Long.parseLong(payload.substring(SPILLED_PREFIX.length())));
+                if (rows.isEmpty()) {
+                    return;
+                }
+                frame = rows.get(0);
+            }
+            receiver.accept(frame);
+        } catch (Exception ex) {
+            logger.error("Error delivering cluster frame: {}", ex.getMessage(), ex);
+        }
+    }
+
+    // Channel names are identifiers: keep them lower-case alphanumeric and short
+    private static String channelFor(String nodeId) {
+        String safe = nodeId.toLowerCase().replaceAll("[^a-z0-9_]", "_");
+        return "junkchat_node_" + (safe.length() > 40 ? safe.substring(0, 40) : safe);
+    }
+}
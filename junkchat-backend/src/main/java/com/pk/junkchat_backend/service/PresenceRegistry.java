@@ -0,0 +1,150 @@
+package com.pk.junkchat_backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Presence of the users connected to this node. Keeps one small entry per user with at least one local session
+ * (or one that just closed), in a ConcurrentHashMap, so connects, disconnects and heartbeats of different users
+ * never contend. Changes only mark the user dirty; PresenceService turns dirty users into deltas on its own
+ * schedule, which is what absorbs flapping connections.
+ *
+ * Has no dependencies so the inbound channel interceptor can record heartbeats without pulling in the broker.
+ */
+@Service
+public class PresenceRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceRegistry.class);
+
+    // Rough retained size of one tracked user: map node, boxed key, entry object and a dirty-set slot
+    public static final int ESTIMATED_ENTRY_BYTES = 160;
+
+    @Value("${junkchat.presence.max-users:500000}")
+    private int maxUsers;
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private volatile long lastOverflowLog;
+
+    public void sessionOpened(Long userId) {
+        long now = System.currentTimeMillis();
+        if (!entries.containsKey(userId) && entries.size() >= maxUsers) {
+            if (now - lastOverflowLog > 60_000) {
+                lastOverflowLog = now;
+                logger.warn("Presence registry is full ({} users); not tracking new users", maxUsers);
+            }
+            return;
+        }
+        entries.compute(userId, (id, entry) -> {
+            Entry current = entry != null ? entry : new Entry();
+            current.sessions++;
+            current.offlineSince = 0;
+            current.lastSeen = now;
+            return current;
+        });
+        dirty.add(userId);
+    }
+
+    public void sessionClosed(Long userId) {
+        long now = System.currentTimeMillis();
+        Entry updated = entries.computeIfPresent(userId, (id, entry) -> {
+            entry.sessions = Math.max(0, entry.sessions - 1);
+            entry.lastSeen = now;
+            if (entry.sessions == 0) {
+                entry.offlineSince = now;
+            }
+            return entry;
+        });
+        if (updated != null) {
+            dirty.add(userId);
+        }
+    }
+
+    // Any inbound frame, STOMP heartbeats included; allocation-free on the hot path
+    public void touch(Long userId) {
+        Entry entry = entries.get(userId);
+        if (entry != null) {
+            entry.lastSeen = System.currentTimeMillis();
+        }
+    }
+
+    public boolean isOnlineLocally(Long userId) {
+        Entry entry = entries.get(userId);
+        return entry != null && entry.sessions > 0;
+    }
+
+    /**
+     * Dirty users whose state has settled: connected ones right away, disconnected ones once they stayed
+     * offline for graceMillis. Users still inside the grace period stay dirty for the next round.
+     */
+    public List<Candidate> settled(long now, long graceMillis) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (Long userId : dirty) {
+            // Unmarked before the entry is read: a change landing after this point marks the user again instead
+            // of being cleared along with the state read here
+            dirty.remove(userId);
+            Candidate[] candidate = new Candidate[1];
+            Entry entry = entries.computeIfPresent(userId, (id, current) -> {
+                if (current.sessions > 0 || now - current.offlineSince >= graceMillis) {
+                    candidate[0] = new Candidate(userId, current.sessions > 0, current.lastSeen);
+                }
+                return current;
+            });
+            if (candidate[0] != null) {
+                candidates.add(candidate[0]);
+            } else if (entry != null) {
+                dirty.add(userId);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Records that online was broadcast for a candidate. Returns false if that is what contacts last heard, so
+     * a disconnect followed by a reconnect within the window produces nothing. Users without local sessions
+     * are dropped afterwards.
+     */
+    public boolean publish(Candidate candidate, boolean online) {
+        boolean[] changed = new boolean[1];
+        entries.computeIfPresent(candidate.userId(), (id, entry) -> {
+            if (entry.sessions > 0 != candidate.online()) {
+                // Connected or disconnected again since the candidate was taken; it is dirty for the next round
+                return entry;
+            }
+            changed[0] = entry.publishedOnline != online;
+            entry.publishedOnline = online;
+            return entry.sessions > 0 ? entry : null;
+        });
+        return changed[0];
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int dirtySize() {
+        return dirty.size();
+    }
+
+    public long estimatedBytes() {
+        return (long) (entries.size() + dirty.size()) * ESTIMATED_ENTRY_BYTES;
+    }
+
+    public record Candidate(Long userId, boolean online, long lastSeen) {
+    }
+
+    private static class Entry {
+        private int sessions;
+        private volatile long lastSeen;
+        private long offlineSince;
+        private boolean publishedOnline;
+    }
+}
@@ -0,0 +1,203 @@
+package com.pk.junkchat_backend.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pk.junkchat_backend.model.DeliveryEvent;
+import com.pk.junkchat_backend.model.PresenceUpdate;
+import com.pk.junkchat_backend.repository.ContactRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Online/offline state for contact lists. Session events feed the PresenceRegistry; every flush interval the
+ * settled changes are turned into deltas and each watcher (a user who has the changed user in their contacts)
+ * gets one ephemeral "presence" event listing all of them. A user is reported offline only after staying
+ * disconnected for the grace period and having no session on any other node.
+ */
+@Service
+public class PresenceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceService.class);
+
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+
+    @Autowired
+    private SessionDirectory sessionDirectory;
+
+    @Autowired
+    private ClusterMessagingService clusterMessagingService;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${junkchat.presence.offline-grace-ms:5000}")
+    private long offlineGraceMillis;
+
+    @Value("${junkchat.presence.watcher-cache-ttl-seconds:60}")
+    private long watcherCacheTtlSeconds;
+
+    // Upper bound on watcher ids held by the cache, i.e. about 8 bytes each
+    @Value("${junkchat.presence.watcher-cache-max-ids:2000000}")
+    private long watcherCacheMaxIds;
+
+    // userId -> ids of the users who have userId in their contacts; loaded on virtual threads, so callers on
+    // latency-sensitive threads can wait for a miss without blocking
+    private AsyncCache<Long, long[]> watchers;
+    private ExecutorService watcherLoader;
+    private Counter deltasPublished;
+    private Counter eventsDelivered;
+
+    @PostConstruct
+    public void init() {
+        watcherLoader = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("presence-watchers-", 1).factory());
+        watchers = Caffeine.newBuilder()
+                .maximumWeight(watcherCacheMaxIds)
+                .weigher((Long userId, long[] ids) -> Math.max(1, ids.length))
+                .expireAfterWrite(Duration.ofSeconds(watcherCacheTtlSeconds))
+                .executor(watcherLoader)
+                .buildAsync();
+        Gauge.builder("presence.registry.users", presenceRegistry, PresenceRegistry::size).register(meterRegistry);
+        Gauge.builder("presence.registry.pending", presenceRegistry, PresenceRegistry::dirtySize).register(meterRegistry);
+        Gauge.builder("presence.registry.estimated.bytes", presenceRegistry, PresenceRegistry::estimatedBytes)
+                .baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("presence.watchers.cached.ids", watchers, cache -> cache.synchronous().policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L)).register(meterRegistry);
+        deltasPublished = meterRegistry.counter("presence.deltas.published");
+        eventsDelivered = meterRegistry.counter("presence.events.delivered");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watcherLoader.shutdownNow();
+    }
+
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        Long userId = userIdOf(event.getUser());
+        if (userId != null) {
+            presenceRegistry.sessionOpened(userId);
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        Long userId = userIdOf(event.getUser());
+        if (userId != null) {
+            presenceRegistry.sessionClosed(userId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${junkchat.presence.flush-ms:2000}")
+    public void flush() {
+        try {
+            List<PresenceRegistry.Candidate> candidates = presenceRegistry.settled(System.currentTimeMillis(), offlineGraceMillis);
+            if (candidates.isEmpty()) {
+                return;
+            }
+            // Users that left this node may still be connected elsewhere; one directory query for all of them
+            List<Long> leftHere = new ArrayList<>();
+            for (PresenceRegistry.Candidate candidate : candidates) {
+                if (!candidate.online()) {
+                    leftHere.add(candidate.userId());
+                }
+            }
+            Map<Long, Set<String>> elsewhere = leftHere.isEmpty() ? Map.of() : sessionDirectory.findNodes(leftHere);
+
+            Map<Long, List<PresenceUpdate>> updatesByWatcher = new HashMap<>();
+            int published = 0;
+            for (PresenceRegistry.Candidate candidate : candidates) {
+                boolean online = candidate.online() || elsewhere.containsKey(candidate.userId());
+                if (!presenceRegistry.publish(candidate, online)) {
+                    continue;
+                }
+                published++;
+                PresenceUpdate update = new PresenceUpdate(candidate.userId(), online, online ? null : candidate.lastSeen());
+                for (long watcherId : watchersOf(candidate.userId())) {
+                    updatesByWatcher.computeIfAbsent(watcherId, id -> new ArrayList<>()).add(update);
+                }
+            }
+            if (updatesByWatcher.isEmpty()) {
+                return;
+            }
+            Map<Long, List<DeliveryEvent>> events = new HashMap<>();
+            updatesByWatcher.forEach((watcherId, updates) ->
+                    events.put(watcherId, List.of(new DeliveryEvent(DeliveryEvent.PRESENCE, updates, true))));
+            clusterMessagingService.deliverAll(events);
+            deltasPublished.increment(published);
+            eventsDelivered.increment(events.size());
+            logger.debug("Published {} presence changes to {} watchers", published, events.size());
+        } catch (Exception ex) {
+            logger.error("Error publishing presence changes: {}", ex.getMessage(), ex);
+        }
+    }
+
+    // Current state of the given users, cluster-wide; used to seed a freshly loaded contact list
+    public List<PresenceUpdate> getPresence(Collection<Long> userIds) {
+        Map<Long, Set<String>> nodes = sessionDirectory.findNodes(userIds);
+        List<PresenceUpdate> presence = new ArrayList<>(userIds.size());
+        for (Long userId : userIds) {
+            presence.add(new PresenceUpdate(userId, nodes.containsKey(userId), null));
+        }
+        return presence;
+    }
+
+    // Call when someone adds or removes userId as a contact
+    public void watchersChanged(Long userId) {
+        watchers.synchronous().invalidate(userId);
+    }
+
+    // Whether watcherId has userId in their contacts. Already complete when the watcher list is cached; a miss
+    // starts loading it on a loader thread, never on the caller's.
+    public CompletableFuture<Boolean> isWatching(Long watcherId, Long userId) {
+        return loadWatchers(userId).thenApply(ids -> Arrays.binarySearch(ids, watcherId) >= 0);
+    }
+
+    private long[] watchersOf(Long userId) {
+        return loadWatchers(userId).join();
+    }
+
+    private CompletableFuture<long[]> loadWatchers(Long userId) {
+        return watchers.get(userId, id -> contactRepository.findUserIdsByContactId(id).stream()
+                .mapToLong(Long::longValue).sorted().toArray());
+    }
+
+    private Long userIdOf(Principal user) {
+        if (user == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(user.getName());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+}
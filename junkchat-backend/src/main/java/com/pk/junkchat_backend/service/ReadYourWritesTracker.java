@@ -0,0 +1,83 @@
+package com.pk.junkchat_backend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pk.junkchat_backend.model.UserPrincipal;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * When each user last changed data they will read back right away (sent a message, marked a conversation read,
+ * edited their profile or contacts). Replica routing keeps that user's reads on the primary until a replica has
+ * caught up with the write. A no-op when no replicas are configured.
+ *
+ * Writes are tracked per instance. With several instances (junkchat.cluster.mode=postgres) the guarantee only
+ * holds if the load balancer keeps each user on one instance, which ReplicaDataSourceConfig insists on.
+ */
+@Service
+public class ReadYourWritesTracker {
+
+    @Value("${junkchat.datasource.replica.urls:}")
+    private String replicaUrls;
+
+    @Value("${junkchat.datasource.replica.sticky-ms:1000}")
+    private long stickyMillis;
+
+    // Replicas further behind than this are not used at all, so older writes need no tracking
+    @Value("${junkchat.datasource.replica.max-lag-ms:5000}")
+    private long maxLagMillis;
+
+    @Value("${junkchat.datasource.replica.tracked-users:100000}")
+    private long trackedUsers;
+
+    // userId -> epoch millis of the user's last write
+    private Cache<Long, Long> lastWrites;
+    private boolean enabled;
+
+    @PostConstruct
+    public void init() {
+        enabled = !replicaUrls.isBlank();
+        lastWrites = Caffeine.newBuilder()
+                .maximumSize(trackedUsers)
+                .expireAfterWrite(Duration.ofMillis(Math.max(stickyMillis, maxLagMillis)))
+                .build();
+    }
+
+    public void recordWrite(Long... userIds) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Long userId : userIds) {
+            if (userId != null) {
+                lastWrites.put(userId, now);
+            }
+        }
+    }
+
+    // Last write of the authenticated user on this thread, 0 if none is tracked
+    public long lastWriteOfCurrentUser() {
+        if (!enabled) {
+            return 0;
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof UserPrincipal principal)) {
+            return 0;
+        }
+        Long wroteAt = lastWrites.getIfPresent(principal.getId());
+        return wroteAt != null ? wroteAt : 0;
+    }
+
+    public long getStickyMillis() {
+        return stickyMillis;
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+}
@@ -0,0 +1,37 @@
+package com.pk.junkchat_backend.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cluster-wide record of which node holds the WebSocket sessions of which user.
+ */
+public interface SessionDirectory {
+
+    void register(String nodeId, String sessionId, Long userId);
+
+    void unregister(String nodeId, String sessionId);
+
+    // Nodes (possibly including the caller) that currently hold at least one session of the user
+    Set<String> findNodes(Long userId);
+
+    // Same as findNodes, for many users at once; users without sessions are left out
+    default Map<Long, Set<String>> findNodes(Collection<Long> userIds) {
+        Map<Long, Set<String>> nodes = new HashMap<>();
+        for (Long userId : userIds) {
+            Set<String> userNodes = findNodes(userId);
+            if (!userNodes.isEmpty()) {
+                nodes.put(userId, userNodes);
+            }
+        }
+        return nodes;
+    }
+
+    // Marks nodeId alive and forgets sessions of nodes that stopped reporting
+    void heartbeat(String nodeId);
+
+    // Called on shutdown so other nodes stop forwarding here right away
+    void removeNode(String nodeId);
+}
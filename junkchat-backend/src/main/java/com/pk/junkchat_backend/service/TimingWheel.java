@@ -0,0 +1,123 @@
+package com.pk.junkchat_backend.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical hashed timing wheel. Level 0 has one slot per tick; each higher level has one slot per full
+ * turn of the level below. Adding an entry and expiring it are O(1); entries on higher levels are moved down
+ * ("cascaded") once when the lower level wraps around to their slot.
+ *
+ * Not thread-safe: callers serialize access.
+ */
+class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final List<List<Entry<T>>>[] levels;
+    private final long[] levelTicks;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMillis, int wheelSize, int levelCount, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.levels = new List[levelCount];
+        this.levelTicks = new long[levelCount];
+        long ticks = 1;
+        for (int i = 0; i < levelCount; i++) {
+            levels[i] = new ArrayList<>(wheelSize);
+            for (int slot = 0; slot < wheelSize; slot++) {
+                levels[i].add(new ArrayList<>());
+            }
+            levelTicks[i] = ticks;
+            ticks *= wheelSize;
+        }
+        this.currentTick = Math.floorDiv(startMillis, tickMillis);
+    }
+
+    /**
+     * Schedules item to expire at deadlineMillis. Returns false, without scheduling, if the deadline
+     * has already passed.
+     */
+    boolean add(long deadlineMillis, T item) {
+        long deadlineTick = Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis);
+        if (deadlineTick <= currentTick) {
+            return false;
+        }
+        place(new Entry<>(deadlineTick, item));
+        size++;
+        return true;
+    }
+
+    /**
+     * Moves the wheel forward to nowMillis and hands every entry whose deadline has passed to expired.
+     */
+    void advance(long nowMillis, Consumer<T> expired) {
+        long targetTick = Math.floorDiv(nowMillis, tickMillis);
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = levels.length - 1; level > 0; level--) {
+                if (currentTick % levelTicks[level] == 0) {
+                    cascade(level, expired);
+                }
+            }
+            List<Entry<T>> slot = levels[0].get((int) (currentTick % wheelSize));
+            if (!slot.isEmpty()) {
+                List<Entry<T>> due = new ArrayList<>(slot);
+                slot.clear();
+                for (Entry<T> entry : due) {
+                    expireOrPlace(entry, expired);
+                }
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void cascade(int level, Consumer<T> expired) {
+        List<Entry<T>> slot = levels[level].get((int) ((currentTick / levelTicks[level]) % wheelSize));
+        if (slot.isEmpty()) {
+            return;
+        }
+        List<Entry<T>> entries = new ArrayList<>(slot);
+        slot.clear();
+        for (Entry<T> entry : entries) {
+            expireOrPlace(entry, expired);
+        }
+    }
+
+    private void expireOrPlace(Entry<T> entry, Consumer<T> expired) {
+        if (entry.deadlineTick <= currentTick) {
+            size--;
+            expired.accept(entry.item);
+        } else {
+            place(entry);
+        }
+    }
+
+    private void place(Entry<T> entry) {
+        long delta = entry.deadlineTick - currentTick;
+        int level = 0;
+        while (level < levels.length - 1 && delta >= levelTicks[level] * wheelSize) {
+            level++;
+        }
+        // Deadlines beyond the top level's span land in a nearer slot and are re-placed when it cascades
+        int slot = (int) ((entry.deadlineTick / levelTicks[level]) % wheelSize);
+        levels[level].get(slot).add(entry);
+    }
+
+    private static class Entry<T> {
+        private final long deadlineTick;
+        private final T item;
+
+        Entry(long deadlineTick, T item) {
+            this.deadlineTick = deadlineTick;
+            this.item = item;
+        }
+    }
+}
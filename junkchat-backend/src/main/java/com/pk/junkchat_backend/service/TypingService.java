@@ -0,0 +1,163 @@
+package com.pk.junkchat_backend.service;
+
+import com.pk.junkchat_backend.model.DeliveryEvent;
+import com.pk.junkchat_backend.model.TypingEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Typing indicators, in memory only. Clients may report every keystroke; per conversation (sender to recipient)
+ * the server forwards a state change at most max-per-second times, repeats "still typing" only every refresh
+ * interval, and sends the latest state left over from a burst once the interval has passed. Frames are ephemeral,
+ * so a slow client drops them first.
+ */
+@Service
+public class TypingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TypingService.class);
+
+    // Conversations idle for this long are forgotten
+    private static final long IDLE_MILLIS = 60_000;
+
+    @Autowired
+    private ClusterMessagingService clusterMessagingService;
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${junkchat.typing.max-per-second:2}")
+    private int maxPerSecond;
+
+    // Clients clear an indicator that was not refreshed for a while; keep it alive while typing goes on
+    @Value("${junkchat.typing.refresh-ms:3000}")
+    private long refreshMillis;
+
+    // "senderId:recipientId" -> what the recipient last heard and what is waiting to be sent
+    private final Map<String, Conversation> conversations = new ConcurrentHashMap<>();
+    private long minIntervalMillis;
+    private Counter received;
+    private Counter forwarded;
+    private Counter rejected;
+    private Counter uncached;
+
+    @PostConstruct
+    public void init() {
+        minIntervalMillis = 1000L / Math.max(1, maxPerSecond);
+        received = meterRegistry.counter("typing.events.received");
+        forwarded = meterRegistry.counter("typing.events.forwarded");
+        rejected = meterRegistry.counter("typing.events.rejected");
+        uncached = meterRegistry.counter("typing.events.uncached");
+        Gauge.builder("typing.conversations", conversations, Map::size).register(meterRegistry);
+    }
+
+    public void typing(Long senderId, Long recipientId, boolean typing) {
+        received.increment();
+        if (senderId.equals(recipientId)) {
+            rejected.increment();
+            return;
+        }
+        // Only to people who have the sender in their contacts, i.e. who already share a conversation. Called on
+        // the inbound channel, so nothing waits for the database here: while the watcher list is still loading the
+        // event is dropped, and the client's next report (it keeps refreshing while typing) goes through.
+        CompletableFuture<Boolean> watching = presenceService.isWatching(recipientId, senderId);
+        if (!watching.isDone()) {
+            uncached.increment();
+            return;
+        }
+        if (watching.isCompletedExceptionally() || !watching.join()) {
+            rejected.increment();
+            return;
+        }
+        record(senderId, recipientId, typing);
+    }
+
+    private void record(Long senderId, Long recipientId, boolean typing) {
+        long now = System.currentTimeMillis();
+        Conversation conversation = conversations.computeIfAbsent(senderId + ":" + recipientId,
+                key -> new Conversation(senderId, recipientId));
+        boolean send;
+        synchronized (conversation) {
+            conversation.lastActivity = now;
+            boolean due = now - conversation.lastSentAt >= minIntervalMillis;
+            boolean changed = conversation.lastSent == null || conversation.lastSent != typing;
+            boolean refresh = typing && now - conversation.lastSentAt >= refreshMillis;
+            if ((changed || refresh) && due) {
+                conversation.lastSent = typing;
+                conversation.lastSentAt = now;
+                conversation.pending = null;
+                send = true;
+            } else {
+                // Inside the interval only the latest state survives; flushPending sends it if it differs
+                conversation.pending = changed ? typing : null;
+                send = false;
+            }
+        }
+        if (send) {
+            forward(conversation, typing);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${junkchat.typing.flush-ms:100}")
+    public void flushPending() {
+        long now = System.currentTimeMillis();
+        for (Conversation conversation : conversations.values()) {
+            Boolean typing = null;
+            synchronized (conversation) {
+                if (conversation.pending != null && now - conversation.lastSentAt >= minIntervalMillis) {
+                    typing = conversation.pending;
+                    conversation.pending = null;
+                    conversation.lastSent = typing;
+                    conversation.lastSentAt = now;
+                } else if (conversation.pending == null && now - conversation.lastActivity > IDLE_MILLIS) {
+                    conversations.remove(conversation.key(), conversation);
+                }
+            }
+            if (typing != null) {
+                forward(conversation, typing);
+            }
+        }
+    }
+
+    private void forward(Conversation conversation, boolean typing) {
+        try {
+            clusterMessagingService.deliver(conversation.recipientId,
+                    new DeliveryEvent(DeliveryEvent.TYPING, new TypingEvent(conversation.senderId, typing), true));
+            forwarded.increment();
+        } catch (Exception ex) {
+            logger.warn("Could not forward typing state from {} to {}: {}", conversation.senderId, conversation.recipientId, ex.getMessage());
+        }
+    }
+
+    private static class Conversation {
+        private final Long senderId;
+        private final Long recipientId;
+        private Boolean lastSent;
+        private long lastSentAt;
+        private Boolean pending;
+        private long lastActivity;
+
+        Conversation(Long senderId, Long recipientId) {
+            this.senderId = senderId;
+            this.recipientId = recipientId;
+        }
+
+        String key() {
+            return senderId + ":" + recipientId;
+        }
+    }
+}
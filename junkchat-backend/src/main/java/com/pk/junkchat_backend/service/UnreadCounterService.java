@@ -0,0 +1,115 @@
+package com.pk.junkchat_backend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pk.junkchat_backend.repository.UnreadCounterRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Unread message counts per (reader, sender), backed by the unread_counter table. Each node caches counts it has
+ * read; every write invalidates the local entry, and resets and recalculations are broadcast so other nodes drop
+ * their copy too.
+ */
+@Service
+public class UnreadCounterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UnreadCounterService.class);
+
+    private static final String RESET_TOPIC = "unread-reset";
+
+    private static final String RESET_ALL_TOPIC = "unread-reset-all";
+
+    @Autowired
+    private UnreadCounterRepository unreadCounterRepository;
+
+    @Autowired
+    private ClusterMessagingService clusterMessagingService;
+
+    // Keyed by "userId:contactId"; the DB row stays the source of truth
+    private final Cache<String, Integer> counters = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterAccess(Duration.ofHours(1))
+            .build();
+
+    @PostConstruct
+    public void init() {
+        clusterMessagingService.onBroadcast(RESET_TOPIC, counters::invalidate);
+        clusterMessagingService.onBroadcast(RESET_ALL_TOPIC, body -> counters.invalidateAll());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        try {
+            if (unreadCounterRepository.count() == 0) {
+                int inserted = unreadCounterRepository.backfillFromMessages();
+                logger.info("Backfilled {} unread counters from existing messages", inserted);
+            }
+        } catch (Exception ex) {
+            logger.error("Error backfilling unread counters: {}", ex.getMessage(), ex);
+        }
+    }
+
+    public int getUnreadCount(Long userId, Long contactId) {
+        return counters.get(key(userId, contactId), k -> {
+            Integer count = unreadCounterRepository.findUnreadCount(userId, contactId);
+            return count != null ? count : 0;
+        });
+    }
+
+    public void increment(Long userId, Long contactId) {
+        int count = unreadCounterRepository.incrementUnreadCount(userId, contactId);
+        counters.invalidate(key(userId, contactId));
+        logger.debug("Incremented unread count: userId={}, contactId={}, count={}", userId, contactId, count);
+    }
+
+    // One upsert for many readers of the same sender, e.g. a broadcast
+    public void incrementAll(Long[] userIds, Long contactId) {
+        List<Object[]> counts = unreadCounterRepository.incrementUnreadCounts(userIds, contactId);
+        for (Object[] row : counts) {
+            counters.invalidate(key(((Number) row[0]).longValue(), contactId));
+        }
+        logger.debug("Incremented unread counts: {} users, contactId={}", userIds.length, contactId);
+    }
+
+    public void reset(Long userId, Long contactId) {
+        unreadCounterRepository.resetUnreadCount(userId, contactId);
+        invalidate(key(userId, contactId));
+        logger.debug("Reset unread count: userId={}, contactId={}", userId, contactId);
+    }
+
+    // Recounts from messages sent after the cutoff; used once older messages have expired
+    public int recalculateAll(LocalDateTime cutoff) {
+        int updated = unreadCounterRepository.recalculateUnreadCounts(cutoff);
+        counters.invalidateAll();
+        clusterMessagingService.broadcast(RESET_ALL_TOPIC, "");
+        return updated;
+    }
+
+    public void recalculateConversation(Long userId1, Long userId2, LocalDateTime cutoff) {
+        int updated = unreadCounterRepository.recalculateUnreadCountsForConversation(userId1, userId2, cutoff);
+        if (updated > 0) {
+            invalidate(key(userId1, userId2));
+            invalidate(key(userId2, userId1));
+        }
+    }
+
+    // Drops the local entry and every other node's copy; never writes a value a racing load could overtake
+    private void invalidate(String key) {
+        counters.invalidate(key);
+        clusterMessagingService.broadcast(RESET_TOPIC, key);
+    }
+
+    private String key(Long userId, Long contactId) {
+        return userId + ":" + contactId;
+    }
+}
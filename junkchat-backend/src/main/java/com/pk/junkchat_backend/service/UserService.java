@@ -1,65 +1,244 @@
 package com.pk.junkchat_backend.service;
 
-import com.pk.junkchat_backend.model.Message;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pk.junkchat_backend.model.ContactSummary;
 import com.pk.junkchat_backend.model.User;
-import com.pk.junkchat_backend.repository.MessageRepository;
+import com.pk.junkchat_backend.model.UserPrincipal;
+import com.pk.junkchat_backend.repository.ContactRepository;
 import com.pk.junkchat_backend.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
-public class UserService implements UserDetailsService {
+public class UserService implements UserDetailsService, UserDetailsPasswordService {
 
     private static final Logger logger = LoggerFactory.getLogger(UserService.class);
 
+    private static final String EVICT_TOPIC = "user-evict";
+
     @Autowired
     private UserRepository userRepository;
 
     @Autowired
-    private MessageRepository messageRepository;
+    private PasswordEncoder passwordEncoder;
 
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private AvatarStorageService avatarStorageService;
+
+    @Autowired
+    private UsernameSearchIndex usernameSearchIndex;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private ReadYourWritesTracker readYourWritesTracker;
+
+    // Lazy: the WebSocket config needs this service before the messaging template ClusterMessagingService uses exists
+    @Lazy
+    @Autowired
+    private ClusterMessagingService clusterMessagingService;
+
+    @Value("${junkchat.user-cache.ttl-seconds:300}")
+    private long cacheTtlSeconds;
+
+    @Value("${junkchat.user-cache.max-size:10000}")
+    private long cacheMaxSize;
+
+    // Resolved users by id, plus lower-cased username/email -> id. Callers always get a copy,
+    // so transient fields set on a returned User never leak into the cache.
+    private Cache<Long, User> usersById;
+    private Cache<String, Long> idsByIdentifier;
+
+    @PostConstruct
+    public void initCaches() {
+        usersById = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(cacheTtlSeconds))
+                .build();
+        idsByIdentifier = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize * 2)
+                .expireAfterWrite(Duration.ofSeconds(cacheTtlSeconds))
+                .build();
+    }
+
+    // Body: the user id, then every username/email that may point at it, one per line
+    @EventListener(ContextRefreshedEvent.class)
+    public void subscribeToEvictions() {
+        clusterMessagingService.onBroadcast(EVICT_TOPIC, body -> {
+            String[] lines = body.split("\n");
+            evictLocally(Long.valueOf(lines[0]), Arrays.copyOfRange(lines, 1, lines.length));
+        });
+    }
 
     public User findByIdentifier(String identifier) {
+        Long cachedId = identifier != null ? idsByIdentifier.getIfPresent(identifier.toLowerCase(Locale.ROOT)) : null;
+        User cached = cachedId != null ? usersById.getIfPresent(cachedId) : null;
+        if (cached != null) {
+            return copyOf(cached);
+        }
         User user = userRepository.findByUsernameIgnoreCaseOrEmailIgnoreCase(identifier, identifier);
         logger.debug("findByIdentifier: identifier={}, user={}", identifier, user != null ? user.getUsername() : "null");
+        if (user != null) {
+            cache(user);
+            idsByIdentifier.put(identifier.toLowerCase(Locale.ROOT), user.getId());
+        }
         return user;
     }
 
     public Optional<User> findById(Long id) {
+        User cached = usersById.getIfPresent(id);
+        if (cached != null) {
+            return Optional.of(copyOf(cached));
+        }
         Optional<User> user = userRepository.findById(id);
         logger.debug("findById: id={}, user={}", id, user.isPresent() ? user.get().getUsername() : "null");
+        user.ifPresent(this::cache);
         return user;
     }
 
-    public List<User> searchUsers(String query, Long currentUserId) {
-        logger.info("Searching users with query: {}, currentUserId: {}", query, currentUserId);
-        List<User> users = userRepository.findByUsernameContainingIgnoreCaseAndIdNot(query, currentUserId);
-        logger.info("Found {} users for query: {}", users.size(), query);
-        for (User user : users) {
-            logger.debug("Processing user: id={}, username={}", user.getId(), user.getUsername());
-            Message lastMessage = messageRepository.findLatestMessageBetweenUsers(currentUserId, user.getId());
-            if (lastMessage != null) {
-                user.setLastMessageContent(lastMessage.getContent());
-                user.setLastMessageTime(lastMessage.getSentAt());
-                logger.debug("Set last message for user {} (ID: {}): content='{}', time={}",
-                        user.getUsername(), user.getId(), lastMessage.getContent(), lastMessage.getSentAt());
+    // Cached users come from the cache; the rest are loaded in one query. Unknown ids are left out.
+    public List<User> findAllById(Collection<Long> ids) {
+        List<User> users = new ArrayList<>(ids.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            User cached = usersById.getIfPresent(id);
+            if (cached != null) {
+                users.add(copyOf(cached));
             } else {
-                logger.debug("No last message found for user {} (ID: {}) with currentUserId={}",
-                        user.getUsername(), user.getId(), currentUserId);
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (User user : userRepository.findAllById(missing)) {
+                cache(user);
+                users.add(user);
+            }
+        }
+        logger.debug("findAllById: requested={}, found={}, loaded={}", ids.size(), users.size(), missing.size());
+        return users;
+    }
+
+    /**
+     * The user resolved by JwtAuthenticationFilter for the current request, without another lookup.
+     * Falls back to a (cached) lookup by name for other kinds of authentication.
+     */
+    public User getCurrentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null) {
+            return null;
+        }
+        if (authentication.getPrincipal() instanceof UserPrincipal principal) {
+            return principal.getUser();
+        }
+        return findByIdentifier(authentication.getName());
+    }
+
+    public void evict(User user) {
+        if (user == null || user.getId() == null) {
+            return;
+        }
+        evict(user.getId(), user.getUsername(), user.getEmail());
+    }
+
+    // Drops the user and the given identifier keys here and on every other node
+    private void evict(Long id, String... identifiers) {
+        evictLocally(id, identifiers);
+        StringBuilder body = new StringBuilder().append(id);
+        for (String identifier : identifiers) {
+            if (identifier != null) {
+                body.append('\n').append(identifier);
+            }
+        }
+        clusterMessagingService.broadcast(EVICT_TOPIC, body.toString());
+    }
+
+    private void evictLocally(Long id, String... identifiers) {
+        usersById.invalidate(id);
+        for (String identifier : identifiers) {
+            if (identifier != null) {
+                idsByIdentifier.invalidate(identifier.toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    private void cache(User user) {
+        User copy = copyOf(user);
+        usersById.put(copy.getId(), copy);
+        idsByIdentifier.put(copy.getUsername().toLowerCase(Locale.ROOT), copy.getId());
+        idsByIdentifier.put(copy.getEmail().toLowerCase(Locale.ROOT), copy.getId());
+    }
+
+    private User copyOf(User user) {
+        User copy = new User();
+        copy.setId(user.getId());
+        copy.setUsername(user.getUsername());
+        copy.setEmail(user.getEmail());
+        copy.setPassword(user.getPassword());
+        copy.setProfilePic(user.getProfilePic());
+        return copy;
+    }
+
+    // The user's contact list with last message and unread count per contact
+    @Transactional(readOnly = true)
+    public List<ContactSummary> getContactSummaries(Long userId) {
+        return contactRepository.findContactSummaries(userId);
+    }
+
+    // One page of users whose name contains query, best matches first
+    @Transactional(readOnly = true)
+    public List<ContactSummary> searchUsers(String query, Long currentUserId, int offset, int limit) {
+        logger.info("Searching users with query: {}, currentUserId: {}", query, currentUserId);
+        List<Long> ids;
+        if (usernameSearchIndex.isReady()) {
+            ids = usernameSearchIndex.search(query, currentUserId, offset, limit);
+        } else {
+            String q = query.toLowerCase(Locale.ROOT).replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+            ids = userRepository.searchIdsByUsername(query.toLowerCase(Locale.ROOT), "%" + q + "%", q + "%", currentUserId, offset, limit);
+        }
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, ContactSummary> byId = new HashMap<>();
+        for (ContactSummary user : userRepository.findContactSummaries(ids, currentUserId)) {
+            byId.put(user.getId(), user);
+        }
+        List<ContactSummary> users = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            ContactSummary user = byId.get(id);
+            if (user != null) {
+                users.add(user);
             }
         }
+        logger.info("Found {} users for query: {}", users.size(), query);
         return users;
     }
 
@@ -67,6 +246,9 @@ public class UserService implements UserDetailsService {
         Optional<User> existingUser = userRepository.findById(id);
         if (existingUser.isPresent()) {
             User user = existingUser.get();
+            // The cache may still map the old name and email to this user
+            String oldUsername = user.getUsername();
+            String oldEmail = user.getEmail();
             if (updatedUser.getUsername() != null && !updatedUser.getUsername().isEmpty()) {
                 user.setUsername(updatedUser.getUsername());
             }
@@ -76,10 +258,17 @@ public class UserService implements UserDetailsService {
             if (updatedUser.getPassword() != null && !updatedUser.getPassword().isEmpty()) {
                 user.setPassword(passwordEncoder.encode(updatedUser.getPassword()));
             }
-            if (updatedUser.getProfilePic() != null && !updatedUser.getProfilePic().isEmpty()) {
-                user.setProfilePic(updatedUser.getProfilePic());
+            if (AvatarStorageService.isDataUrl(updatedUser.getProfilePic())) {
+                try {
+                    user.setProfilePic(avatarStorageService.store(updatedUser.getProfilePic()));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("Could not store profile picture", ex);
+                }
             }
             User savedUser = userRepository.save(user);
+            evict(savedUser.getId(), oldUsername, oldEmail, savedUser.getUsername(), savedUser.getEmail());
+            usernameSearchIndex.update(savedUser.getId(), savedUser.getUsername());
+            readYourWritesTracker.recordWrite(savedUser.getId());
             logger.debug("Updated user: id={}, username={}", savedUser.getId(), savedUser.getUsername());
             return savedUser;
         }
@@ -90,18 +279,46 @@ public class UserService implements UserDetailsService {
     public User registerUser(User user) {
         user.setPassword(passwordEncoder.encode(user.getPassword()));
         User savedUser = userRepository.save(user);
+        evict(savedUser);
+        usernameSearchIndex.update(savedUser.getId(), savedUser.getUsername());
         logger.debug("Registered user: id={}, username={}", savedUser.getId(), savedUser.getUsername());
         return savedUser;
     }
 
+    // Called by the authentication provider after a successful login when the stored hash uses an older bcrypt cost
+    @Override
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        User user = userRepository.findByUsernameIgnoreCaseOrEmailIgnoreCase(userDetails.getUsername(), userDetails.getUsername());
+        if (user == null) {
+            return userDetails;
+        }
+        user.setPassword(newPassword);
+        User savedUser = userRepository.save(user);
+        evict(savedUser);
+        logger.info("Rehashed password for username={}", savedUser.getUsername());
+        return new UserPrincipal(copyOf(savedUser));
+    }
+
+    // Password logins check the hash in the database, never a cached copy: the cache is per instance, so a
+    // password changed through another node would otherwise keep working here until the entry expires
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        User user = userRepository.findByUsernameIgnoreCaseOrEmailIgnoreCase(username, username);
+        if (user == null) {
+            logger.warn("User not found: username={}", username);
+            throw new UsernameNotFoundException("User not found: " + username);
+        }
+        cache(user);
+        return new UserPrincipal(copyOf(user));
+    }
+
+    // For requests carrying a verified JWT; no password is checked, so the cached user is good enough
+    public UserPrincipal loadTokenUser(String username) throws UsernameNotFoundException {
         User user = findByIdentifier(username);
         if (user == null) {
             logger.warn("User not found: username={}", username);
             throw new UsernameNotFoundException("User not found: " + username);
         }
-        return new org.springframework.security.core.userdetails.User(
-                user.getUsername(), user.getPassword(), new ArrayList<>());
+        return new UserPrincipal(user);
     }
 }
\ No newline at end of file
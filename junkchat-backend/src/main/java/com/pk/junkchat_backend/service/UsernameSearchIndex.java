@@ -0,0 +1,256 @@
+package com.pk.junkchat_backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory username index. A sorted map of lower-cased usernames answers prefix queries with one range scan;
+ * a trigram posting list narrows substring queries to a few candidates. Results are ranked exact match, then
+ * prefix, then substring, shorter names first. Queries of one or two characters match too many names to rank
+ * them all; they walk the names length by length, which is already result order, and stop once the page is
+ * full. Registrations and renames on this node update it right away; users added on other nodes are picked up
+ * by a periodic refresh.
+ */
+@Service
+public class UsernameSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(UsernameSearchIndex.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Names are lower-cased, so "Anna" and "anna" share one entry
+    private final TreeMap<String, Set<Long>> idsByName = new TreeMap<>();
+    // Length -> names of that length, for short queries
+    private final TreeMap<Integer, TreeSet<String>> namesByLength = new TreeMap<>();
+    private final Map<Long, String> namesById = new HashMap<>();
+    private final Map<String, Set<Long>> idsByTrigram = new HashMap<>();
+    private long maxLoadedId;
+    private volatile boolean ready;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            rebuild();
+        } catch (Exception ex) {
+            logger.error("Error loading username search index: {}", ex.getMessage(), ex);
+        }
+    }
+
+    // Until the first load completes callers fall back to the database
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Full reload, so renames made on other nodes show up eventually
+    @Scheduled(fixedDelayString = "${junkchat.search.rebuild-ms:1800000}", initialDelayString = "${junkchat.search.rebuild-ms:1800000}")
+    public void rebuild() {
+        Map<Long, String> users = new HashMap<>();
+        jdbcTemplate.query("SELECT id, username FROM users", rs -> {
+            users.put(rs.getLong(1), rs.getString(2));
+        });
+        lock.writeLock().lock();
+        try {
+            idsByName.clear();
+            namesByLength.clear();
+            namesById.clear();
+            idsByTrigram.clear();
+            maxLoadedId = 0;
+            users.forEach(this::put);
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Loaded {} usernames into the search index", users.size());
+    }
+
+    // Users registered on other nodes since the last load
+    @Scheduled(fixedDelayString = "${junkchat.search.refresh-ms:30000}", initialDelayString = "${junkchat.search.refresh-ms:30000}")
+    public void refresh() {
+        if (!ready) {
+            return;
+        }
+        try {
+            long since;
+            lock.readLock().lock();
+            try {
+                since = maxLoadedId;
+            } finally {
+                lock.readLock().unlock();
+            }
+            Map<Long, String> users = new HashMap<>();
+            jdbcTemplate.query("SELECT id, username FROM users WHERE id > ?", rs -> {
+                users.put(rs.getLong(1), rs.getString(2));
+            }, since);
+            users.forEach(this::update);
+        } catch (Exception ex) {
+            logger.error("Error refreshing username search index: {}", ex.getMessage(), ex);
+        }
+    }
+
+    public void update(Long id, String username) {
+        if (id == null || username == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            remove(id);
+            put(id, username);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of users whose name contains query, best matches first, skipping excludedId; offset and limit page
+     * through the ranked list.
+     */
+    public List<Long> search(String query, Long excludedId, int offset, int limit) {
+        String q = query.toLowerCase(Locale.ROOT);
+        int wanted = offset + limit;
+        List<Map.Entry<String, Long>> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (q.length() < 3) {
+                collectShort(q, excludedId, wanted, matches);
+            } else {
+                collect(q, excludedId, matches);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        matches.sort(Comparator.<Map.Entry<String, Long>>comparingInt(entry -> rank(entry.getKey(), q))
+                .thenComparingInt(entry -> entry.getKey().length())
+                .thenComparing(Map.Entry::getKey));
+        List<Long> ids = new ArrayList<>(limit);
+        for (int i = offset; i < Math.min(wanted, matches.size()); i++) {
+            ids.add(matches.get(i).getValue());
+        }
+        return ids;
+    }
+
+    // Every match: exact and prefix hits straight out of the sorted map, substrings from the rarest trigram
+    private void collect(String q, Long excludedId, List<Map.Entry<String, Long>> matches) {
+        for (Map.Entry<String, Set<Long>> entry : idsByName.subMap(q, true, q + Character.MAX_VALUE, true).entrySet()) {
+            add(entry.getKey(), entry.getValue(), excludedId, Integer.MAX_VALUE, matches);
+        }
+        Set<Long> smallest = null;
+        for (String trigram : trigrams(q)) {
+            Set<Long> postings = idsByTrigram.get(trigram);
+            if (postings == null) {
+                return;
+            }
+            if (smallest == null || postings.size() < smallest.size()) {
+                smallest = postings;
+            }
+        }
+        for (Long id : smallest) {
+            String name = namesById.get(id);
+            if (!id.equals(excludedId) && name.contains(q) && !name.startsWith(q)) {
+                matches.add(Map.entry(name, id));
+            }
+        }
+    }
+
+    // The first wanted matches in result order: exact, then prefix and then substring hits, each shortest first
+    private void collectShort(String q, Long excludedId, int wanted, List<Map.Entry<String, Long>> matches) {
+        add(q, idsByName.get(q), excludedId, wanted, matches);
+        for (TreeSet<String> names : namesByLength.tailMap(q.length(), false).values()) {
+            for (String name : names.subSet(q, true, q + Character.MAX_VALUE, true)) {
+                if (!add(name, idsByName.get(name), excludedId, wanted, matches)) {
+                    return;
+                }
+            }
+        }
+        // Only reached while the page is not full; a query few names contain still visits every name once
+        for (TreeSet<String> names : namesByLength.tailMap(q.length(), false).values()) {
+            for (String name : names) {
+                if (name.contains(q) && !name.startsWith(q) && !add(name, idsByName.get(name), excludedId, wanted, matches)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Returns false once matches holds wanted entries
+    private static boolean add(String name, Set<Long> ids, Long excludedId, int wanted, List<Map.Entry<String, Long>> matches) {
+        if (ids != null) {
+            for (Long id : ids) {
+                if (matches.size() >= wanted) {
+                    return false;
+                }
+                if (!id.equals(excludedId)) {
+                    matches.add(Map.entry(name, id));
+                }
+            }
+        }
+        return matches.size() < wanted;
+    }
+
+    private static int rank(String name, String q) {
+        return name.equals(q) ? 0 : name.startsWith(q) ? 1 : 2;
+    }
+
+    private void put(Long id, String username) {
+        String name = username.toLowerCase(Locale.ROOT);
+        idsByName.computeIfAbsent(name, n -> new TreeSet<>()).add(id);
+        namesByLength.computeIfAbsent(name.length(), length -> new TreeSet<>()).add(name);
+        namesById.put(id, name);
+        for (String trigram : trigrams(name)) {
+            idsByTrigram.computeIfAbsent(trigram, t -> new HashSet<>()).add(id);
+        }
+        maxLoadedId = Math.max(maxLoadedId, id);
+    }
+
+    private void remove(Long id) {
+        String name = namesById.remove(id);
+        if (name == null) {
+            return;
+        }
+        Set<Long> ids = idsByName.get(name);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            idsByName.remove(name);
+            TreeSet<String> names = namesByLength.get(name.length());
+            names.remove(name);
+            if (names.isEmpty()) {
+                namesByLength.remove(name.length());
+            }
+        }
+        for (String trigram : trigrams(name)) {
+            Set<Long> postings = idsByTrigram.get(trigram);
+            if (postings != null) {
+                postings.remove(id);
+                if (postings.isEmpty()) {
+                    idsByTrigram.remove(trigram);
+                }
+            }
+        }
+    }
+
+    private static Set<String> trigrams(String name) {
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= name.length(); i++) {
+            trigrams.add(name.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+}
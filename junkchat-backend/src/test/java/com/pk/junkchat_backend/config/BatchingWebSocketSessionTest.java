@@ -0,0 +1,97 @@
+package com.pk.junkchat_backend.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BatchingWebSocketSessionTest {
+
+    private static final String EPHEMERAL = "MESSAGE\ndestination:/user/queue/events\nx-ephemeral:true\n\n{}\0";
+
+    private BatchingWebSocketHandlerDecoratorFactory factory;
+    private WebSocketSession delegate;
+    private BatchingWebSocketSession session;
+
+    @BeforeEach
+    void setUp() {
+        factory = new BatchingWebSocketHandlerDecoratorFactory();
+        ReflectionTestUtils.setField(factory, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(factory, "batchWindowMillis", 20L);
+        ReflectionTestUtils.setField(factory, "maxBufferedBytes", 200);
+        ReflectionTestUtils.setField(factory, "sendTimeLimitMillis", 10_000);
+        factory.init();
+        delegate = mock(WebSocketSession.class);
+        when(delegate.getId()).thenReturn("s1");
+        session = new BatchingWebSocketSession(delegate, factory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        factory.shutdown();
+    }
+
+    @Test
+    void framesWithinTheWindowAreWrittenAsOneMessage() throws IOException {
+        session.sendMessage(new TextMessage(frame("a")));
+        session.sendMessage(new TextMessage(frame("b")));
+        session.sendMessage(new TextMessage(frame("c")));
+
+        ArgumentCaptor<TextMessage> sent = ArgumentCaptor.forClass(TextMessage.class);
+        verify(delegate, timeout(1000)).sendMessage(sent.capture());
+        assertThat(sent.getValue().getPayload()).isEqualTo(frame("a") + frame("b") + frame("c"));
+    }
+
+    @Test
+    void ephemeralFramesAreDroppedFirstWhenTheBufferIsFull() throws IOException {
+        session.sendMessage(new TextMessage(EPHEMERAL));
+        session.sendMessage(new TextMessage(frame("x".repeat(150))));
+        session.sendMessage(new TextMessage(EPHEMERAL));
+
+        ArgumentCaptor<TextMessage> sent = ArgumentCaptor.forClass(TextMessage.class);
+        verify(delegate, timeout(1000)).sendMessage(sent.capture());
+        assertThat(sent.getValue().getPayload()).isEqualTo(frame("x".repeat(150)));
+        verify(delegate, never()).close(any());
+    }
+
+    @Test
+    void slowConsumerIsClosedWhenOnlyDurableFramesWouldOverflow() throws Exception {
+        session.sendMessage(new TextMessage(frame("x".repeat(150))));
+        session.sendMessage(new TextMessage(frame("y".repeat(150))));
+
+        verify(delegate).close(CloseStatus.SESSION_NOT_RELIABLE);
+        Thread.sleep(100);
+        verify(delegate, never()).sendMessage(any());
+    }
+
+    @Test
+    void failedFlushClosesTheSession() throws IOException {
+        doThrow(new IOException("broken pipe")).when(delegate).sendMessage(any());
+
+        session.sendMessage(new TextMessage(frame("a")));
+
+        verify(delegate, timeout(1000)).close(CloseStatus.SERVER_ERROR);
+        session.sendMessage(new TextMessage(frame("b")));
+        verify(delegate, timeout(1000).times(1)).sendMessage(any());
+    }
+
+    private static String frame(String body) {
+        return "MESSAGE\ndestination:/user/queue/events\n\n" + body + "\0";
+    }
+}
@@ -0,0 +1,222 @@
+package com.pk.junkchat_backend.config;
+
+import com.pk.junkchat_backend.model.User;
+import com.pk.junkchat_backend.model.UserPrincipal;
+import com.pk.junkchat_backend.service.ReadYourWritesTracker;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReplicaRoutingDataSourceTest {
+
+    private static final String SERVICE_READ = "com.pk.junkchat_backend.service.MessageService.getMessagePage";
+
+    private HikariDataSource primaryPool;
+    private HikariDataSource replicaPool;
+    private Connection primaryConnection;
+    private Connection replicaConnection;
+    private ResultSet primaryLsn;
+    private ResultSet replicaState;
+    private ReadYourWritesTracker tracker;
+    private ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        primaryLsn = singleRow();
+        primaryConnection = connectionReturning(primaryLsn);
+        primaryPool = mock(HikariDataSource.class);
+        when(primaryPool.getConnection()).thenReturn(primaryConnection);
+
+        replicaState = singleRow();
+        replicaConnection = connectionReturning(replicaState);
+        replicaPool = mock(HikariDataSource.class);
+        when(replicaPool.getConnection()).thenReturn(replicaConnection);
+        when(replicaPool.getPoolName()).thenReturn("replica-0");
+
+        tracker = newTracker("jdbc:postgresql://replica/junkchat", 1000, 5000);
+        routing = new ReplicaRoutingDataSource(primaryPool, List.of(replicaPool), tracker, new SimpleMeterRegistry(), 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        TransactionSynchronizationManager.setCurrentTransactionName(null);
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void writesAlwaysUsePrimary() throws SQLException {
+        standalone();
+        routing.checkLag();
+
+        assertThat(routing.getConnection()).isSameAs(primaryConnection);
+    }
+
+    @Test
+    void readOnlyServiceTransactionUsesCheckedReplica() throws SQLException {
+        readOnly(SERVICE_READ);
+        assertThat(routing.getConnection()).as("not checked yet").isSameAs(primaryConnection);
+
+        standalone();
+        routing.checkLag();
+
+        assertThat(routing.getConnection()).isSameAs(replicaConnection);
+    }
+
+    @Test
+    void springDataReadOnlyMethodsStayOnPrimary() throws SQLException {
+        standalone();
+        routing.checkLag();
+        readOnly("org.springframework.data.jpa.repository.support.SimpleJpaRepository.findById");
+
+        assertThat(routing.getConnection()).isSameAs(primaryConnection);
+    }
+
+    @Test
+    void recentWriterReadsFromPrimary() throws SQLException {
+        standalone();
+        routing.checkLag();
+        signIn(7L);
+        tracker.recordWrite(7L);
+        readOnly(SERVICE_READ);
+
+        assertThat(routing.getConnection()).isSameAs(primaryConnection);
+    }
+
+    @Test
+    void standbyIsUsedOnlyAfterReplayingPastTheSample() throws SQLException {
+        when(primaryLsn.getLong(1)).thenReturn(1_000L);
+        when(replicaState.getBoolean(1)).thenReturn(true);
+        when(replicaState.getLong(2)).thenReturn(999L);
+        routing.checkLag();
+        readOnly(SERVICE_READ);
+
+        assertThat(routing.getConnection()).as("behind the sample").isSameAs(primaryConnection);
+
+        resetRow(primaryLsn);
+        resetRow(replicaState);
+        when(replicaState.getLong(2)).thenReturn(1_000L);
+        routing.checkLag();
+
+        assertThat(routing.getConnection()).isSameAs(replicaConnection);
+    }
+
+    @Test
+    void unreachableReplicaFallsBackToPrimary() throws SQLException {
+        standalone();
+        routing.checkLag();
+        readOnly(SERVICE_READ);
+        doThrow(new SQLException("connection refused")).when(replicaPool).getConnection();
+
+        assertThat(routing.getConnection()).isSameAs(primaryConnection);
+        doReturn(replicaConnection).when(replicaPool).getConnection();
+        assertThat(routing.getConnection()).as("marked down until the next check").isSameAs(primaryConnection);
+    }
+
+    /**
+     * Against two real local instances, e.g. a second postgres on port 5433:
+     * JUNKCHAT_TEST_PRIMARY_URL, JUNKCHAT_TEST_REPLICA_URL, JUNKCHAT_TEST_DB_USER, JUNKCHAT_TEST_DB_PASSWORD.
+     * A standalone second instance counts as caught up; a streaming standby is measured by LSN.
+     */
+    @Test
+    @EnabledIfEnvironmentVariable(named = "JUNKCHAT_TEST_REPLICA_URL", matches = ".+")
+    void routesBetweenTwoLocalInstances() throws SQLException {
+        String replicaUrl = System.getenv("JUNKCHAT_TEST_REPLICA_URL");
+        try (HikariDataSource primary = pool(System.getenv("JUNKCHAT_TEST_PRIMARY_URL"), "primary");
+             HikariDataSource replica = pool(replicaUrl, "replica-0");
+             ReplicaRoutingDataSource local = new ReplicaRoutingDataSource(primary, List.of(replica),
+                     newTracker(replicaUrl, 0, 5000), new SimpleMeterRegistry(), 2)) {
+            local.checkLag();
+
+            readOnly(SERVICE_READ);
+            try (Connection connection = local.getConnection()) {
+                assertThat(connection.getMetaData().getURL()).isEqualTo(replicaUrl);
+            }
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+            try (Connection connection = local.getConnection()) {
+                assertThat(connection.getMetaData().getURL()).isEqualTo(System.getenv("JUNKCHAT_TEST_PRIMARY_URL"));
+            }
+        }
+    }
+
+    private void standalone() throws SQLException {
+        when(replicaState.getBoolean(1)).thenReturn(false);
+    }
+
+    private void readOnly(String transactionName) {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        TransactionSynchronizationManager.setCurrentTransactionName(transactionName);
+    }
+
+    private void signIn(Long userId) {
+        User user = new User();
+        user.setId(userId);
+        UserPrincipal principal = new UserPrincipal(user);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+
+    private static ReadYourWritesTracker newTracker(String replicaUrls, long stickyMillis, long maxLagMillis) {
+        ReadYourWritesTracker tracker = new ReadYourWritesTracker();
+        ReflectionTestUtils.setField(tracker, "replicaUrls", replicaUrls);
+        ReflectionTestUtils.setField(tracker, "stickyMillis", stickyMillis);
+        ReflectionTestUtils.setField(tracker, "maxLagMillis", maxLagMillis);
+        ReflectionTestUtils.setField(tracker, "trackedUsers", 1000L);
+        tracker.init();
+        return tracker;
+    }
+
+    private static HikariDataSource pool(String url, String name) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setUsername(System.getenv("JUNKCHAT_TEST_DB_USER"));
+        config.setPassword(System.getenv("JUNKCHAT_TEST_DB_PASSWORD"));
+        config.setPoolName(name);
+        config.setMaximumPoolSize(2);
+        return new HikariDataSource(config);
+    }
+
+    // One-row, one-column-per-call result set, re-armed by resetRow
+    private static ResultSet singleRow() throws SQLException {
+        ResultSet resultSet = mock(ResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        resetRow(resultSet);
+        return resultSet;
+    }
+
+    private static void resetRow(ResultSet resultSet) throws SQLException {
+        when(resultSet.next()).thenReturn(true, false);
+    }
+
+    private static Connection connectionReturning(ResultSet resultSet) throws SQLException {
+        Statement statement = mock(Statement.class);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(statement);
+        return connection;
+    }
+}
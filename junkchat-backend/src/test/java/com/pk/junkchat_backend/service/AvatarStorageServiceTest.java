@@ -0,0 +1,77 @@
+package com.pk.junkchat_backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AvatarStorageServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private AvatarStorageService avatars;
+
+    @AfterEach
+    void tearDown() {
+        avatars.shutdown();
+    }
+
+    @Test
+    void largeImageIsScaledDownToTheThumbnailSize() throws Exception {
+        avatars = store(10_000_000);
+
+        String url = avatars.store(pngDataUrl(1200, 600));
+
+        BufferedImage thumbnail = ImageIO.read(awaitThumbnail(url).toFile());
+        assertThat(thumbnail.getWidth()).isEqualTo(128);
+        assertThat(thumbnail.getHeight()).isEqualTo(64);
+    }
+
+    @Test
+    void imageOverThePixelLimitGetsNoThumbnail() throws Exception {
+        avatars = store(100_000);
+
+        String url = avatars.store(pngDataUrl(1200, 600));
+
+        assertThat(awaitThumbnail(url)).isNull();
+        assertThat(avatars.resolve(url.substring(AvatarStorageService.URL_PREFIX.length()))).isNotNull();
+    }
+
+    private AvatarStorageService store(long maxPixels) throws IOException {
+        AvatarStorageService service = new AvatarStorageService();
+        ReflectionTestUtils.setField(service, "directory", directory.toString());
+        ReflectionTestUtils.setField(service, "thumbnailSize", 128);
+        ReflectionTestUtils.setField(service, "thumbnailThreads", 1);
+        ReflectionTestUtils.setField(service, "maxPixels", maxPixels);
+        service.init();
+        return service;
+    }
+
+    // Waits for the background render by letting the single thumbnail thread finish its queue
+    private Path awaitThumbnail(String url) throws InterruptedException {
+        ExecutorService executor = (ExecutorService) ReflectionTestUtils.getField(avatars, "thumbnailExecutor");
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        String name = url.substring(AvatarStorageService.URL_PREFIX.length());
+        return avatars.resolve(name.substring(0, name.lastIndexOf('.')) + AvatarStorageService.THUMBNAIL_SUFFIX);
+    }
+
+    private static String pngDataUrl(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", bytes);
+        return "data:image/png;base64," + Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+}
@@ -0,0 +1,163 @@
+package com.pk.junkchat_backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pk.junkchat_backend.model.DeliveryEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+// Two nodes in one JVM, wired like junkchat.cluster.mode=local: shared in-memory directory, in-process transport
+class ClusterMessagingServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private SimpMessagingTemplate templateA;
+    private SimpMessagingTemplate templateB;
+    private ClusterMessagingService nodeA;
+    private ClusterMessagingService nodeB;
+
+    @BeforeEach
+    void setUp() {
+        templateA = mock(SimpMessagingTemplate.class);
+        templateB = mock(SimpMessagingTemplate.class);
+        nodeA = node("node-a", templateA);
+        nodeB = node("node-b", templateB);
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodeA.stop();
+        nodeB.stop();
+    }
+
+    @Test
+    void forwardsToTheNodeHoldingTheSession() throws Exception {
+        connect(nodeB, "s1", 42L);
+
+        nodeA.deliver(42L, new DeliveryEvent(DeliveryEvent.MESSAGE, Map.of("content", "hi")));
+
+        verifyNoInteractions(templateA);
+        Message<?> published = publishedOn(templateB, "/user/42/queue/events");
+        assertThat(objectMapper.readTree((byte[]) published.getPayload()).path("payload").path("content").asText()).isEqualTo("hi");
+        assertThat(StompHeaderAccessor.wrap(published).getFirstNativeHeader(DeliveryEvent.EPHEMERAL_HEADER)).isNull();
+    }
+
+    @Test
+    void localSessionsAreServedWithoutForwarding() {
+        connect(nodeA, "s1", 42L);
+
+        nodeA.deliver(42L, new DeliveryEvent(DeliveryEvent.MESSAGE, "hi"));
+
+        verify(templateA).convertAndSend(eq("/user/42/queue/events"), any(Object.class), (Map<String, Object>) any());
+        verifyNoInteractions(templateB);
+    }
+
+    @Test
+    void batchKeepsEphemeralFlagAcrossNodes() {
+        connect(nodeA, "s1", 1L);
+        connect(nodeB, "s2", 2L);
+
+        nodeA.deliverAll(Map.of(
+                1L, List.of(new DeliveryEvent(DeliveryEvent.TYPING, "t", true)),
+                2L, List.of(new DeliveryEvent(DeliveryEvent.PRESENCE, "p", true), new DeliveryEvent(DeliveryEvent.MESSAGE, "m"))));
+
+        ArgumentCaptor<Message<?>> local = messages();
+        verify(templateA).send(eq("/user/1/queue/events"), local.capture());
+        ArgumentCaptor<Message<?>> remote = messages();
+        verify(templateB, times(2)).send(eq("/user/2/queue/events"), remote.capture());
+        assertThat(remote.getAllValues()).extracting(message ->
+                StompHeaderAccessor.wrap(message).getFirstNativeHeader(DeliveryEvent.EPHEMERAL_HEADER)).containsExactly("true", null);
+        assertThat(remote.getAllValues()).extracting(message -> new String((byte[]) message.getPayload(), StandardCharsets.UTF_8))
+                .containsExactly("{\"type\":\"presence\",\"payload\":\"p\"}", "{\"type\":\"message\",\"payload\":\"m\"}");
+    }
+
+    @Test
+    void disconnectedUsersAreNoLongerForwarded() {
+        connect(nodeB, "s1", 42L);
+        nodeB.onSessionDisconnect(new SessionDisconnectEvent(this, stompMessage("s1"), "s1", CloseStatus.NORMAL));
+
+        nodeA.deliver(42L, new DeliveryEvent(DeliveryEvent.MESSAGE, "hi"));
+
+        verify(templateB, never()).send(anyString(), any());
+    }
+
+    @Test
+    void connectOnAnotherNodeClearsTheCachedLookup() {
+        nodeA.deliver(42L, new DeliveryEvent(DeliveryEvent.MESSAGE, "before"));
+        connect(nodeB, "s1", 42L);
+
+        nodeA.deliver(42L, new DeliveryEvent(DeliveryEvent.MESSAGE, "after"));
+
+        verify(templateB).send(eq("/user/42/queue/events"), any());
+    }
+
+    @Test
+    void broadcastReachesOtherNodesOnly() {
+        List<String> receivedA = new ArrayList<>();
+        List<String> receivedB = new ArrayList<>();
+        nodeA.onBroadcast("topic", receivedA::add);
+        nodeB.onBroadcast("topic", receivedB::add);
+
+        nodeA.broadcast("topic", "42:7");
+
+        assertThat(receivedA).isEmpty();
+        assertThat(receivedB).containsExactly("42:7");
+    }
+
+    private ClusterMessagingService node(String nodeId, SimpMessagingTemplate template) {
+        ClusterMessagingService service = new ClusterMessagingService();
+        ReflectionTestUtils.setField(service, "messagingTemplate", template);
+        ReflectionTestUtils.setField(service, "sessionDirectory", new InMemorySessionDirectory());
+        ReflectionTestUtils.setField(service, "clusterTransport", new InProcessClusterTransport());
+        ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(service, "configuredNodeId", nodeId);
+        ReflectionTestUtils.setField(service, "nodeCacheMillis", 60_000L);
+        service.start();
+        return service;
+    }
+
+    private void connect(ClusterMessagingService node, String sessionId, Long userId) {
+        node.onSessionConnected(new SessionConnectedEvent(this, stompMessage(sessionId), () -> String.valueOf(userId)));
+    }
+
+    private static Message<byte[]> stompMessage(String sessionId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECTED);
+        accessor.setSessionId(sessionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<?> publishedOn(SimpMessagingTemplate template, String destination) {
+        ArgumentCaptor<Message<?>> captor = messages();
+        verify(template).send(eq(destination), captor.capture());
+        return captor.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<Message<?>> messages() {
+        return ArgumentCaptor.forClass((Class<Message<?>>) (Class<?>) Message.class);
+    }
+}
@@ -0,0 +1,112 @@
+package com.pk.junkchat_backend.service;
+
+import com.pk.junkchat_backend.model.DeliveryEvent;
+import com.pk.junkchat_backend.model.Message;
+import com.pk.junkchat_backend.model.MessageView;
+import com.pk.junkchat_backend.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MessageWriteBehindServiceTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private ClusterMessagingService clusterMessagingService;
+    private SimpleMeterRegistry meterRegistry;
+    private MessageWriteBehindService writeBehind;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        clusterMessagingService = mock(ClusterMessagingService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        writeBehind = new MessageWriteBehindService();
+        ReflectionTestUtils.setField(writeBehind, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(writeBehind, "transactionTemplate", new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(writeBehind, "unreadCounterService", mock(UnreadCounterService.class));
+        ReflectionTestUtils.setField(writeBehind, "conversationSummaryService", mock(ConversationSummaryService.class));
+        ReflectionTestUtils.setField(writeBehind, "readYourWritesTracker", mock(ReadYourWritesTracker.class));
+        ReflectionTestUtils.setField(writeBehind, "clusterMessagingService", clusterMessagingService);
+        ReflectionTestUtils.setField(writeBehind, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(writeBehind, "enabled", true);
+        ReflectionTestUtils.setField(writeBehind, "batchSize", 10);
+        ReflectionTestUtils.setField(writeBehind, "flushIntervalMillis", 20L);
+        ReflectionTestUtils.setField(writeBehind, "queueCapacity", 1000);
+        ReflectionTestUtils.setField(writeBehind, "offerTimeoutMillis", 100L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeBehind.stop();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedMessageIsReportedToBothSidesAndNotCountedAsPersisted() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new DataIntegrityViolationException("sender_id violates foreign key"));
+        writeBehind.start();
+
+        writeBehind.enqueue(message(1L, 7L, 8L));
+        writeBehind.awaitPersisted(5000);
+
+        ArgumentCaptor<DeliveryEvent> event = ArgumentCaptor.forClass(DeliveryEvent.class);
+        verify(clusterMessagingService).deliver(eq(7L), event.capture());
+        verify(clusterMessagingService).deliver(eq(8L), any());
+        assertThat(event.getValue().getType()).isEqualTo(DeliveryEvent.MESSAGE_FAILED);
+        assertThat(((MessageView) event.getValue().getPayload()).getId()).isEqualTo(1L);
+        assertThat(meterRegistry.counter("messages.write-behind.persisted").count()).isZero();
+        assertThat(meterRegistry.counter("messages.write-behind.failed").count()).isEqualTo(1);
+    }
+
+    @Test
+    void stopDrainsEverythingQueued() {
+        writeBehind.start();
+        for (long id = 1; id <= 50; id++) {
+            writeBehind.enqueue(message(id, 7L, 8L));
+        }
+
+        writeBehind.stop();
+
+        assertThat(meterRegistry.counter("messages.write-behind.persisted").count()).isEqualTo(50);
+        verify(clusterMessagingService, never()).deliver(any(), any());
+    }
+
+    private static Message message(Long id, Long senderId, Long recipientId) {
+        Message message = new Message();
+        message.setId(id);
+        message.setSender(user(senderId));
+        message.setRecipient(user(recipientId));
+        message.setContent("hi");
+        message.setSentAt(LocalDateTime.of(2024, 1, 1, 12, 0));
+        message.assignConversationKey();
+        return message;
+    }
+
+    private static User user(Long id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+}
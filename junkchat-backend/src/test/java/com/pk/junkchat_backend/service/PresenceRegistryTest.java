@@ -0,0 +1,98 @@
+package com.pk.junkchat_backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PresenceRegistryTest {
+
+    private static final long GRACE = 5000;
+
+    private PresenceRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new PresenceRegistry();
+        ReflectionTestUtils.setField(registry, "maxUsers", 3);
+    }
+
+    @Test
+    void connectIsSettledRightAway() {
+        registry.sessionOpened(1L);
+
+        List<PresenceRegistry.Candidate> candidates = registry.settled(System.currentTimeMillis(), GRACE);
+
+        assertThat(candidates).extracting(PresenceRegistry.Candidate::userId).containsExactly(1L);
+        assertThat(candidates.get(0).online()).isTrue();
+        assertThat(registry.publish(candidates.get(0), true)).isTrue();
+        assertThat(registry.dirtySize()).isZero();
+    }
+
+    @Test
+    void disconnectWaitsForTheGracePeriod() {
+        registry.sessionOpened(1L);
+        registry.publish(registry.settled(System.currentTimeMillis(), GRACE).get(0), true);
+        registry.sessionClosed(1L);
+        long now = System.currentTimeMillis();
+
+        assertThat(registry.settled(now, GRACE)).isEmpty();
+        assertThat(registry.dirtySize()).as("still pending").isEqualTo(1);
+
+        List<PresenceRegistry.Candidate> candidates = registry.settled(now + GRACE, GRACE);
+        assertThat(candidates).hasSize(1);
+        assertThat(candidates.get(0).online()).isFalse();
+        assertThat(registry.publish(candidates.get(0), false)).isTrue();
+        assertThat(registry.size()).as("dropped once offline was published").isZero();
+    }
+
+    @Test
+    void reconnectWithinTheGracePeriodPublishesNothing() {
+        registry.sessionOpened(1L);
+        registry.publish(registry.settled(System.currentTimeMillis(), GRACE).get(0), true);
+        registry.sessionClosed(1L);
+        registry.sessionOpened(1L);
+
+        List<PresenceRegistry.Candidate> candidates = registry.settled(System.currentTimeMillis(), GRACE);
+
+        assertThat(candidates).hasSize(1);
+        assertThat(registry.publish(candidates.get(0), true)).isFalse();
+    }
+
+    @Test
+    void changeAfterTheCandidateWasTakenStaysDirty() {
+        registry.sessionOpened(1L);
+        PresenceRegistry.Candidate candidate = registry.settled(System.currentTimeMillis(), GRACE).get(0);
+        registry.sessionClosed(1L);
+
+        assertThat(registry.publish(candidate, true)).isFalse();
+        assertThat(registry.dirtySize()).isEqualTo(1);
+        assertThat(registry.size()).isEqualTo(1);
+    }
+
+    @Test
+    void multipleSessionsKeepTheUserOnline() {
+        registry.sessionOpened(1L);
+        registry.sessionOpened(1L);
+        registry.sessionClosed(1L);
+
+        assertThat(registry.isOnlineLocally(1L)).isTrue();
+        registry.sessionClosed(1L);
+        assertThat(registry.isOnlineLocally(1L)).isFalse();
+    }
+
+    @Test
+    void stopsTrackingNewUsersWhenFull() {
+        registry.sessionOpened(1L);
+        registry.sessionOpened(2L);
+        registry.sessionOpened(3L);
+        registry.sessionOpened(4L);
+        registry.sessionOpened(1L);
+
+        assertThat(registry.size()).isEqualTo(3);
+        assertThat(registry.isOnlineLocally(4L)).isFalse();
+    }
+}
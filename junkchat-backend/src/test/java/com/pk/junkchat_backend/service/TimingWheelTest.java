@@ -0,0 +1,85 @@
+package com.pk.junkchat_backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimingWheelTest {
+
+    // 10 ms ticks, 8 slots, 3 levels: level 0 spans 80 ms, level 1 640 ms, level 2 5120 ms
+    private final TimingWheel<String> wheel = new TimingWheel<>(10, 8, 3, 0);
+
+    @Test
+    void expiresEntriesOnceTheirDeadlinePasses() {
+        wheel.add(25, "a");
+        wheel.add(40, "b");
+        List<String> expired = new ArrayList<>();
+
+        wheel.advance(29, expired::add);
+        assertThat(expired).isEmpty();
+
+        wheel.advance(30, expired::add);
+        assertThat(expired).containsExactly("a");
+
+        wheel.advance(40, expired::add);
+        assertThat(expired).containsExactly("a", "b");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void rejectsDeadlinesThatAlreadyPassed() {
+        wheel.advance(100, item -> { });
+
+        assertThat(wheel.add(100, "late")).isFalse();
+        assertThat(wheel.add(95, "later")).isFalse();
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void cascadesEntriesFromHigherLevels() {
+        long[] deadlines = {70, 80, 85, 630, 640, 1000, 5110, 5120};
+        for (long deadline : deadlines) {
+            wheel.add(deadline, String.valueOf(deadline));
+        }
+        assertThat(wheel.size()).isEqualTo(deadlines.length);
+
+        List<String> expired = new ArrayList<>();
+        for (long deadline : deadlines) {
+            // Deadlines round up to the next tick
+            long due = Math.floorDiv(deadline + 9, 10) * 10;
+            wheel.advance(due - 1, expired::add);
+            assertThat(expired).as("before %d", deadline).doesNotContain(String.valueOf(deadline));
+            wheel.advance(due, expired::add);
+            assertThat(expired).as("at %d", deadline).contains(String.valueOf(deadline));
+        }
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void deadlinesBeyondTheTopLevelStillExpireOnTime() {
+        wheel.add(20_000, "far");
+        List<String> expired = new ArrayList<>();
+
+        wheel.advance(19_990, expired::add);
+        assertThat(expired).isEmpty();
+
+        wheel.advance(20_000, expired::add);
+        assertThat(expired).containsExactly("far");
+    }
+
+    @Test
+    void largeJumpExpiresEverythingDue() {
+        for (int i = 1; i <= 1000; i++) {
+            wheel.add(i * 7L, "m" + i);
+        }
+        List<String> expired = new ArrayList<>();
+
+        wheel.advance(3500, expired::add);
+
+        assertThat(expired).hasSize(500);
+        assertThat(wheel.size()).isEqualTo(500);
+    }
+}
@@ -0,0 +1,83 @@
+package com.pk.junkchat_backend.service;
+
+import com.pk.junkchat_backend.model.User;
+import com.pk.junkchat_backend.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserServiceTest {
+
+    private UserRepository userRepository;
+    private ClusterMessagingService clusterMessagingService;
+    private UserService userService;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        clusterMessagingService = mock(ClusterMessagingService.class);
+        userService = new UserService();
+        ReflectionTestUtils.setField(userService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(userService, "passwordEncoder", mock(PasswordEncoder.class));
+        ReflectionTestUtils.setField(userService, "avatarStorageService", mock(AvatarStorageService.class));
+        ReflectionTestUtils.setField(userService, "usernameSearchIndex", mock(UsernameSearchIndex.class));
+        ReflectionTestUtils.setField(userService, "readYourWritesTracker", mock(ReadYourWritesTracker.class));
+        ReflectionTestUtils.setField(userService, "clusterMessagingService", clusterMessagingService);
+        ReflectionTestUtils.setField(userService, "cacheTtlSeconds", 300L);
+        ReflectionTestUtils.setField(userService, "cacheMaxSize", 100L);
+        userService.initCaches();
+    }
+
+    @Test
+    void renameEvictsTheOldNameHereAndOnOtherNodes() {
+        when(userRepository.findByUsernameIgnoreCaseOrEmailIgnoreCase("Alice", "Alice")).thenReturn(user(1L, "alice", "a@x.io"));
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user(1L, "alice", "a@x.io")));
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        assertThat(userService.findByIdentifier("Alice")).isNotNull();
+
+        User update = new User();
+        update.setUsername("alicia");
+        userService.updateUser(1L, update);
+
+        when(userRepository.findByUsernameIgnoreCaseOrEmailIgnoreCase("Alice", "Alice")).thenReturn(null);
+        assertThat(userService.findByIdentifier("Alice")).isNull();
+        verify(clusterMessagingService).broadcast("user-evict", "1\nalice\na@x.io\nalicia\na@x.io");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void evictionFromAnotherNodeDropsTheCachedUser() {
+        userService.subscribeToEvictions();
+        ArgumentCaptor<Consumer<String>> listener = ArgumentCaptor.forClass(Consumer.class);
+        verify(clusterMessagingService).onBroadcast(eq("user-evict"), listener.capture());
+        when(userRepository.findByUsernameIgnoreCaseOrEmailIgnoreCase(anyString(), anyString())).thenReturn(user(1L, "alice", "a@x.io"));
+        userService.findByIdentifier("alice");
+
+        listener.getValue().accept("1\nalice\na@x.io");
+        userService.findByIdentifier("alice");
+
+        verify(userRepository, times(2)).findByUsernameIgnoreCaseOrEmailIgnoreCase("alice", "alice");
+    }
+
+    private static User user(Long id, String username, String email) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setEmail(email);
+        return user;
+    }
+}
@@ -0,0 +1,78 @@
+package com.pk.junkchat_backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UsernameSearchIndexTest {
+
+    private UsernameSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new UsernameSearchIndex();
+        index.update(1L, "anna");
+        index.update(2L, "Annabel");
+        index.update(3L, "joanna");
+        index.update(4L, "bob");
+        index.update(5L, "hannah");
+    }
+
+    @Test
+    void ranksExactThenPrefixThenSubstring() {
+        assertThat(index.search("anna", null, 0, 10)).containsExactly(1L, 2L, 5L, 3L);
+    }
+
+    @Test
+    void isCaseInsensitive() {
+        assertThat(index.search("ANNAB", null, 0, 10)).containsExactly(2L);
+    }
+
+    @Test
+    void skipsTheSearchingUser() {
+        assertThat(index.search("anna", 1L, 0, 10)).containsExactly(2L, 5L, 3L);
+    }
+
+    @Test
+    void pagesThroughTheRankedList() {
+        assertThat(index.search("anna", null, 0, 2)).containsExactly(1L, 2L);
+        assertThat(index.search("anna", null, 2, 2)).containsExactly(5L, 3L);
+        assertThat(index.search("anna", null, 4, 2)).isEmpty();
+    }
+
+    @Test
+    void shortQueriesMatchSubstrings() {
+        assertThat(index.search("b", null, 0, 10)).containsExactly(4L, 2L);
+        assertThat(index.search("nn", null, 0, 10)).containsExactlyInAnyOrder(1L, 2L, 3L, 5L);
+    }
+
+    @Test
+    void shortQueriesPageInRankOrder() {
+        assertThat(index.search("a", null, 0, 2)).containsExactly(1L, 2L);
+        assertThat(index.search("a", null, 2, 2)).containsExactly(5L, 3L);
+        assertThat(index.search("a", null, 4, 2)).isEmpty();
+    }
+
+    @Test
+    void namesDifferingOnlyInCaseAreBothFound() {
+        index.update(6L, "ANNA");
+
+        assertThat(index.search("anna", null, 0, 2)).containsExactly(1L, 6L);
+        index.update(1L, "anne");
+        assertThat(index.search("anna", null, 0, 1)).containsExactly(6L);
+    }
+
+    @Test
+    void renameReplacesTheOldName() {
+        index.update(4L, "robert");
+
+        assertThat(index.search("bob", null, 0, 10)).isEmpty();
+        assertThat(index.search("bert", null, 0, 10)).containsExactly(4L);
+    }
+
+    @Test
+    void unknownTrigramMatchesNothing() {
+        assertThat(index.search("xyz", null, 0, 10)).isEmpty();
+    }
+}